@@ -0,0 +1,90 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.secure.SaSecureUtil;
+import cn.hutool.core.map.MapUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参数签名基准测试：原来的 TreeMap复制 + sortJoin + 拼接后摘要 与 {@link TakeshiSignDigest} 流式摘要对比
+ * <p>执行：./gradlew jmh</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TakeshiSignDigestBenchmark {
+
+    private static final String SIGN = "sign";
+
+    private static final String KEY = "key";
+
+    private static final String SECRET_KEY = "kQwIOrYvnXmSDkwEiFngrKidMcdrgKor";
+
+    /**
+     * 参数个数
+     */
+    @Param({"5", "20"})
+    public int paramCount;
+
+    /**
+     * 参数值的长度
+     */
+    @Param({"16", "256"})
+    public int valueLength;
+
+    private Map<String, String> paramsMap;
+
+    private TakeshiSignDigest signDigest;
+
+    @Setup
+    public void setup() {
+        this.paramsMap = new HashMap<>();
+        for (int i = 0; i < paramCount; i++) {
+            this.paramsMap.put("param" + i, "值v".repeat(valueLength / 2));
+        }
+        this.paramsMap.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        this.paramsMap.put("nonce", "f3c8a1e4b2d94c6e8a7b5d1c0e9f2a3b");
+        this.paramsMap.put(SIGN, "a1b2c3d4e5f60718293a4b5c6d7e8f90");
+        this.signDigest = new TakeshiSignDigest(SaSecureUtil::md5);
+        if (!this.legacy().equals(this.streaming())) {
+            throw new IllegalStateException("TakeshiSignDigest --> signatures do not match");
+        }
+    }
+
+    /**
+     * 原来的方式：复制一份去掉sign，按key排序拼接后再拼上秘钥计算摘要
+     *
+     * @return 签名
+     */
+    @Benchmark
+    public String legacy() {
+        Map<String, String> map = new TreeMap<>(this.paramsMap);
+        map.remove(SIGN);
+        String paramsStr = MapUtil.sortJoin(map, "&", "=", true);
+        return SaSecureUtil.md5(paramsStr + "&" + KEY + "=" + SECRET_KEY);
+    }
+
+    /**
+     * 流式写入摘要
+     *
+     * @return 签名
+     */
+    @Benchmark
+    public String streaming() {
+        return this.signDigest.sign(this.paramsMap, SIGN, KEY, SECRET_KEY);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.takeshi.annotation;
+
+import com.takeshi.enums.RequestPriorityEnum;
+
+import java.lang.annotation.*;
+
+/**
+ * 接口的优先级、并发限制分组和超时时间，优先级和分组需要开启 takeshi.concurrency-limit.enabled 才会生效
+ * <p>方法上的注解优先于类上的注解，没有此注解的接口为普通优先级，并以Controller作为分组</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequestPriority {
+
+    /**
+     * 优先级，系统过载时优先拒绝低优先级的请求
+     *
+     * @return RequestPriorityEnum
+     */
+    RequestPriorityEnum value() default RequestPriorityEnum.NORMAL;
+
+    /**
+     * 并发限制分组，同一分组的接口共用一个自适应并发限制，默认使用Controller的类名
+     *
+     * @return 分组名称
+     */
+    String group() default "";
+
+    /**
+     * 请求超时时间，单位：毫秒，设置0则不限制
+     * <p>从请求开始计算，与header中的request-timeout取较小值，超时后数据库查询、S3、Firebase、邮件、短信等调用会被中断</p>
+     *
+     * @return 超时时间
+     */
+    long timeoutMillis() default 0;
+
+}
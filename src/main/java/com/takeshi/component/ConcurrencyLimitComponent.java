@@ -0,0 +1,154 @@
+package com.takeshi.component;
+
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.enums.RequestPriorityEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制（AIMD），由TakeshiInterceptor使用，需要开启 takeshi.concurrency-limit.enabled
+ * <p>每个分组独立维护正在处理的请求数和并发上限：请求耗时超过maxLatency时上限乘以backoffRatio，
+ * 耗时正常且并发达到上限的一半以上时上限加1；超过上限的请求直接拒绝，不在Tomcat中排队</p>
+ * <p>高优先级的请求可以超出上限，最多使用上限的highPriorityRatio（不超过maxLimit），低优先级的请求只能使用上限的lowPriorityRatio</p>
+ * <p>指标：takeshi.concurrency.limit、takeshi.concurrency.in-flight（group），takeshi.concurrency.rejected（group、priority）</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Component
+public class ConcurrencyLimitComponent {
+
+    private final TakeshiProperties.ConcurrencyLimit concurrencyLimit;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * key：分组，value：分组的并发限制
+     */
+    private final Map<String, Limiter> limiterMap = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param takeshiProperties takeshiProperties
+     * @param meterRegistry     meterRegistry
+     */
+    public ConcurrencyLimitComponent(TakeshiProperties takeshiProperties, MeterRegistry meterRegistry) {
+        this.concurrencyLimit = takeshiProperties.getConcurrencyLimit();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 是否开启了并发限制
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return concurrencyLimit.isEnabled();
+    }
+
+    /**
+     * 尝试获取一个并发许可
+     *
+     * @param group    分组
+     * @param priority 请求优先级
+     * @return 并发许可，超过并发上限时返回NULL，请求结束后必须调用{@link Permit#release()}或{@link Permit#cancel()}
+     */
+    public Permit tryAcquire(String group, RequestPriorityEnum priority) {
+        Limiter limiter = limiterMap.computeIfAbsent(group, Limiter::new);
+        int threshold = switch (priority) {
+            case HIGH -> Math.min((int) Math.ceil(limiter.limit.get() * concurrencyLimit.getHighPriorityRatio()), concurrencyLimit.getMaxLimit());
+            case NORMAL -> limiter.limit.get();
+            case LOW -> Math.max((int) (limiter.limit.get() * concurrencyLimit.getLowPriorityRatio()), 1);
+        };
+        while (true) {
+            int inFlight = limiter.inFlight.get();
+            if (inFlight >= threshold) {
+                limiter.rejectedCounters.computeIfAbsent(priority, item ->
+                        Counter.builder("takeshi.concurrency.rejected").tag("group", group).tag("priority", item.name()).register(meterRegistry)
+                ).increment();
+                return null;
+            }
+            if (limiter.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                return new Permit(limiter, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * 并发许可
+     */
+    public final class Permit {
+
+        private final Limiter limiter;
+
+        private final long startNanos;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Limiter limiter, long startNanos) {
+            this.limiter = limiter;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 请求处理完成，归还许可，并根据耗时调整并发上限
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                int inFlight = limiter.inFlight.getAndDecrement();
+                limiter.onSample(System.nanoTime() - startNanos, inFlight);
+            }
+        }
+
+        /**
+         * 请求没有执行（例如校验失败），归还许可，不调整并发上限
+         */
+        public void cancel() {
+            if (released.compareAndSet(false, true)) {
+                limiter.inFlight.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * 分组的并发限制
+     */
+    private final class Limiter {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger limit;
+
+        private final Map<RequestPriorityEnum, Counter> rejectedCounters = new ConcurrentHashMap<>();
+
+        private Limiter(String group) {
+            this.limit = new AtomicInteger(Math.min(Math.max(concurrencyLimit.getInitialLimit(), concurrencyLimit.getMinLimit()), concurrencyLimit.getMaxLimit()));
+            Gauge.builder("takeshi.concurrency.limit", this.limit, AtomicInteger::get).tag("group", group).register(meterRegistry);
+            Gauge.builder("takeshi.concurrency.in-flight", this.inFlight, AtomicInteger::get).tag("group", group).register(meterRegistry);
+        }
+
+        /**
+         * AIMD：过载时按比例缩小上限，正常且并发接近上限时上限加1
+         *
+         * @param rttNanos 请求耗时
+         * @param inFlight 请求结束前正在处理的请求数
+         */
+        private void onSample(long rttNanos, int inFlight) {
+            if (rttNanos > concurrencyLimit.getMaxLatency().toNanos()) {
+                limit.updateAndGet(current -> Math.max((int) (current * concurrencyLimit.getBackoffRatio()), concurrencyLimit.getMinLimit()));
+            } else if (inFlight * 2 >= limit.get()) {
+                limit.updateAndGet(current -> Math.min(current + 1, concurrencyLimit.getMaxLimit()));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,232 @@
+package com.takeshi.component;
+
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.enums.TakeshiRedisKeyEnum;
+import com.takeshi.pojo.basic.AbstractBasicSerializable;
+import com.takeshi.pojo.bo.IpBlackInfoBO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IP黑名单的本地缓存，开启IP黑名单（takeshi.open-ip-blacklist）时生效
+ * <p>黑名单中的IP在TakeshiInterceptor中直接拒绝，不需要访问Redis；
+ * 黑名单的新增和移除通过Redisson的Topic通知所有节点，订阅成功（包括断线重连后）时从Redis重新加载全部黑名单</p>
+ * <p>Redis中的黑名单仍然是权威数据，本地缓存未命中时由{@link IpRateLimitComponent}的Lua脚本兜底校验</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IpBlacklistComponent implements SmartInitializingSingleton {
+
+    /**
+     * 本地缓存最多保存的IP数量，超过时不再缓存，交由Redis校验
+     */
+    private static final int MAX_SIZE = 100_000;
+
+    private final RedissonClient redissonClient;
+
+    private final TakeshiProperties takeshiProperties;
+
+    /**
+     * key：IP，value：黑名单信息和过期时间
+     */
+    private final Map<String, Entry> blacklistMap = new ConcurrentHashMap<>();
+
+    private RTopic topic;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!takeshiProperties.isOpenIpBlacklist()) {
+            return;
+        }
+        this.topic = redissonClient.getTopic(TakeshiRedisKeyEnum.IP_BLACKLIST_TOPIC.projectKey());
+        this.topic.addListener(IpBlacklistEvent.class, (channel, event) -> this.apply(event));
+        this.topic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                // 订阅期间可能错过了通知，重新加载
+                IpBlacklistComponent.this.reload();
+            }
+        });
+    }
+
+    /**
+     * IP是否在黑名单中，只查询本地缓存
+     *
+     * @param clientIp 客户端IP
+     * @return boolean
+     */
+    public boolean contains(String clientIp) {
+        Entry entry = blacklistMap.get(clientIp);
+        if (ObjUtil.isNull(entry)) {
+            return false;
+        }
+        if (entry.isExpired(Instant.now())) {
+            blacklistMap.remove(clientIp, entry);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取当前节点缓存的所有黑名单，按加入黑名单的时间倒序
+     *
+     * @return List
+     */
+    public List<IpBlackInfoBO> list() {
+        Instant now = Instant.now();
+        return blacklistMap.values()
+                           .stream()
+                           .filter(entry -> !entry.isExpired(now))
+                           .map(Entry::ipBlackInfo)
+                           .sorted(Comparator.comparing(IpBlackInfoBO::getInstant, Comparator.nullsLast(Comparator.reverseOrder())))
+                           .toList();
+    }
+
+    /**
+     * 将IP移出黑名单，并通知所有节点
+     *
+     * @param clientIp 客户端IP
+     * @return Redis中是否存在该IP的黑名单
+     */
+    public boolean unblock(String clientIp) {
+        boolean deleted = redissonClient.getBucket(TakeshiRedisKeyEnum.IP_BLACKLIST.projectKey(clientIp)).delete();
+        this.publish(new IpBlacklistEvent(false, clientIp, null, null));
+        return deleted;
+    }
+
+    /**
+     * IP已经加入Redis的黑名单，通知所有节点
+     *
+     * @param ipBlackInfoBO 黑名单信息
+     * @param duration      黑名单时长
+     */
+    public void blocked(IpBlackInfoBO ipBlackInfoBO, Duration duration) {
+        this.publish(new IpBlacklistEvent(true, ipBlackInfoBO.getClientIp(), ipBlackInfoBO, ipBlackInfoBO.getInstant().plus(duration)));
+    }
+
+    /**
+     * 从Redis重新加载全部黑名单
+     */
+    public void reload() {
+        try {
+            Map<String, Entry> loaded = new ConcurrentHashMap<>();
+            // key的格式为：前缀{clientIp}
+            String prefix = StrUtil.removeSuffix(TakeshiRedisKeyEnum.IP_BLACKLIST.projectKey(""), "}");
+            for (String key : redissonClient.getKeys().getKeysByPattern(prefix + "*}")) {
+                RBucket<Object> bucket = redissonClient.getBucket(key);
+                long remainTimeToLive = bucket.remainTimeToLive();
+                if (bucket.get() instanceof IpBlackInfoBO ipBlackInfoBO && remainTimeToLive > 0 && loaded.size() < MAX_SIZE) {
+                    loaded.put(StrUtil.removeSuffix(key.substring(prefix.length()), "}"), new Entry(ipBlackInfoBO, Instant.now().plusMillis(remainTimeToLive)));
+                }
+            }
+            blacklistMap.keySet().retainAll(loaded.keySet());
+            blacklistMap.putAll(loaded);
+            log.info("IpBlacklistComponent.reload --> {} blacklisted IPs loaded", loaded.size());
+        } catch (Exception e) {
+            log.error("IpBlacklistComponent.reload --> Failed to load IP blacklist: ", e);
+        }
+    }
+
+    /**
+     * Redis中的黑名单在本地缓存中不存在时（例如订阅断开期间错过了通知）补充到本地缓存，只在本节点生效，不通知其他节点
+     *
+     * @param clientIp         客户端IP
+     * @param ipBlackInfoBO    黑名单信息
+     * @param remainTimeToLive Redis中黑名单剩余的过期时间，没有过期时间时不缓存
+     */
+    public void cache(String clientIp, IpBlackInfoBO ipBlackInfoBO, Duration remainTimeToLive) {
+        if (remainTimeToLive.isPositive()) {
+            this.apply(new IpBlacklistEvent(true, clientIp, ipBlackInfoBO, Instant.now().plus(remainTimeToLive)));
+        }
+    }
+
+    private void publish(IpBlacklistEvent event) {
+        // 本节点立即生效，不依赖Topic的回调
+        this.apply(event);
+        if (ObjUtil.isNotNull(this.topic)) {
+            this.topic.publishAsync(event);
+        }
+    }
+
+    private void apply(IpBlacklistEvent event) {
+        if (!event.isAdded()) {
+            blacklistMap.remove(event.getClientIp());
+            return;
+        }
+        Instant now = Instant.now();
+        if (blacklistMap.size() >= MAX_SIZE) {
+            blacklistMap.values().removeIf(entry -> entry.isExpired(now));
+        }
+        if (blacklistMap.size() < MAX_SIZE && event.getExpireAt().isAfter(now)) {
+            blacklistMap.put(event.getClientIp(), new Entry(event.getIpBlackInfo(), event.getExpireAt()));
+        }
+    }
+
+    /**
+     * 本地缓存的黑名单
+     *
+     * @param ipBlackInfo 黑名单信息
+     * @param expireAt    过期时间
+     */
+    private record Entry(IpBlackInfoBO ipBlackInfo, Instant expireAt) {
+
+        boolean isExpired(Instant now) {
+            return !expireAt.isAfter(now);
+        }
+
+    }
+
+    /**
+     * 黑名单变更通知
+     */
+    @EqualsAndHashCode(callSuper = true)
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class IpBlacklistEvent extends AbstractBasicSerializable {
+
+        /**
+         * true：加入黑名单，false：移出黑名单
+         */
+        private boolean added;
+
+        /**
+         * 客户端IP
+         */
+        private String clientIp;
+
+        /**
+         * 黑名单信息，移出黑名单时为null
+         */
+        private IpBlackInfoBO ipBlackInfo;
+
+        /**
+         * 过期时间，移出黑名单时为null
+         */
+        private Instant expireAt;
+
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.takeshi.component;
+
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.enums.TakeshiRedisKeyEnum;
+import com.takeshi.pojo.bo.IpBlackInfoBO;
+import com.takeshi.util.DeadlineUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 接口IP速率限制，使用GCRA（通用信元速率算法）实现，每次校验只需要一次Redis往返
+ * <p>每个IP只使用一个Hash保存状态，字段为：{httpMethod}:{requestURI}，值为理论到达时间（微秒）；
+ * Hash的过期时间为所有字段中最晚的理论到达时间，过期后等同于没有请求记录</p>
+ * <p>检查黑名单、计算速率、超额时加入黑名单在同一个Lua脚本中原子执行</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IpRateLimitComponent {
+
+    /**
+     * 通过校验
+     */
+    public static final long PASS = 0;
+
+    /**
+     * IP在黑名单中
+     */
+    public static final long BLACKLISTED = 1;
+
+    /**
+     * 请求超过速率限制
+     */
+    public static final long LIMITED = 2;
+
+    /**
+     * 超过请求次数后IP加入黑名单的时长
+     */
+    public static final Duration BLACKLIST_DURATION = Duration.ofHours(24);
+
+    /**
+     * KEYS[1]：IP黑名单的key，KEYS[2]：IP速率限制Hash的key
+     * <br/>
+     * ARGV[1]：Hash字段，ARGV[2]：速率，ARGV[3]：速率时间间隔（毫秒），ARGV[4]：是否开启IP黑名单，
+     * ARGV[5]：加入黑名单时保存的值，ARGV[6]：黑名单过期时间（毫秒）
+     * <br/>
+     * 返回：{结果}，IP在黑名单中时返回{结果, 黑名单剩余的过期时间（毫秒）, 黑名单保存的值}
+     */
+    private static final String SCRIPT = """
+            if redis.replicate_commands then
+                redis.replicate_commands()
+            end
+            local openBlacklist = ARGV[4] == '1'
+            if openBlacklist then
+                local blacklistValue = redis.call('GET', KEYS[1])
+                if blacklistValue then
+                    return {1, redis.call('PTTL', KEYS[1]), blacklistValue}
+                end
+            end
+            local interval = tonumber(ARGV[3]) * 1000
+            local emission = math.ceil(interval / tonumber(ARGV[2]))
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local tat = tonumber(redis.call('HGET', KEYS[2], ARGV[1]))
+            if not tat or tat < now then
+                tat = now
+            end
+            local newTat = tat + emission
+            if newTat - now > interval then
+                if openBlacklist then
+                    redis.call('SET', KEYS[1], ARGV[5], 'PX', ARGV[6])
+                end
+                return {2}
+            end
+            redis.call('HSET', KEYS[2], ARGV[1], string.format('%.0f', newTat))
+            local ttl = math.ceil((newTat - now) / 1000)
+            if redis.call('PTTL', KEYS[2]) < ttl then
+                redis.call('PEXPIRE', KEYS[2], ttl)
+            end
+            return {0}
+            """;
+
+    private final RedissonClient redissonClient;
+
+    private final IpBlacklistComponent ipBlacklistComponent;
+
+    private volatile String scriptSha;
+
+    /**
+     * 校验IP速率
+     *
+     * @param clientIp        客户端IP
+     * @param httpMethod      接口方法类型
+     * @param requestURI      接口路径
+     * @param rate            速率，多少毫秒内允许多少次请求
+     * @param rateInterval    速率时间间隔，单位：毫秒
+     * @param openIpBlacklist 是否开启IP黑名单，开启后超过请求次数则将IP加入黑名单内24小时
+     * @return {@link #PASS}、{@link #BLACKLISTED}、{@link #LIMITED}
+     */
+    public long tryAcquire(String clientIp, String httpMethod, String requestURI, long rate, long rateInterval, boolean openIpBlacklist) {
+        List<Object> keys = List.of(TakeshiRedisKeyEnum.IP_BLACKLIST.projectKey(clientIp), TakeshiRedisKeyEnum.IP_RATE_LIMIT.projectKey(clientIp));
+        String blacklistValue = StrUtil.EMPTY;
+        IpBlackInfoBO ipBlackInfoBO = null;
+        if (openIpBlacklist) {
+            // 超额时才会写入，但为了保证原子性需要提前编码
+            ipBlackInfoBO = new IpBlackInfoBO(clientIp, httpMethod, requestURI, new IpBlackInfoBO.IpRate(rate, rateInterval), Instant.now());
+            blacklistValue = this.encode(ipBlackInfoBO);
+        }
+        Object[] values = {
+                StrUtil.builder(httpMethod, StrUtil.COLON, requestURI).toString(),
+                String.valueOf(rate),
+                String.valueOf(rateInterval),
+                openIpBlacklist ? "1" : "0",
+                blacklistValue,
+                String.valueOf(BLACKLIST_DURATION.toMillis())
+        };
+        List<Object> reply = this.evalSha(keys, values);
+        long result = (Long) reply.get(0);
+        if (result == LIMITED && ObjUtil.isNotNull(ipBlackInfoBO)) {
+            // 通知所有节点更新本地的黑名单缓存
+            ipBlacklistComponent.blocked(ipBlackInfoBO, BLACKLIST_DURATION);
+        } else if (result == BLACKLISTED && reply.size() > 2) {
+            // 本地缓存中没有但Redis中存在（例如订阅断开期间错过了通知），按剩余的过期时间补充到本节点的缓存，之后的请求不再访问Redis
+            ipBlacklistComponent.cache(clientIp, this.decode(clientIp, (String) reply.get(2)), Duration.ofMillis((Long) reply.get(1)));
+        }
+        return result;
+    }
+
+    private List<Object> evalSha(List<Object> keys, Object[] values) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        try {
+            // 最多等待到请求的截止时间
+            return DeadlineUtil.join(script.<List<Object>>evalShaAsync(RScript.Mode.READ_WRITE, this.getScriptSha(script), RScript.ReturnType.MULTI, keys, values));
+        } catch (RedisException e) {
+            if (!StrUtil.contains(e.getMessage(), "NOSCRIPT")) {
+                throw e;
+            }
+            // Redis重启或者执行了SCRIPT FLUSH，重新加载脚本
+            log.warn("IpRateLimitComponent.evalSha --> Script not found, reload it");
+            this.scriptSha = null;
+            return DeadlineUtil.join(script.<List<Object>>evalShaAsync(RScript.Mode.READ_WRITE, this.getScriptSha(script), RScript.ReturnType.MULTI, keys, values));
+        }
+    }
+
+    private String getScriptSha(RScript script) {
+        String sha = this.scriptSha;
+        if (ObjUtil.isNull(sha)) {
+            sha = script.scriptLoad(SCRIPT);
+            this.scriptSha = sha;
+        }
+        return sha;
+    }
+
+    /**
+     * 使用RedissonClient的编码器编码，与{@code redissonClient.getBucket(key).get()}读取的格式一致
+     *
+     * @param value value
+     * @return String
+     */
+    @SneakyThrows
+    private String encode(Object value) {
+        ByteBuf byteBuf = redissonClient.getConfig().getCodec().getValueEncoder().encode(value);
+        try {
+            return byteBuf.toString(StandardCharsets.UTF_8);
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    /**
+     * 使用RedissonClient的编码器解码黑名单保存的值，解码失败时只保留IP
+     *
+     * @param clientIp 客户端IP
+     * @param value    value
+     * @return IpBlackInfoBO
+     */
+    private IpBlackInfoBO decode(String clientIp, String value) {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.UTF_8));
+        try {
+            if (redissonClient.getConfig().getCodec().getValueDecoder().decode(byteBuf, null) instanceof IpBlackInfoBO ipBlackInfoBO) {
+                return ipBlackInfoBO;
+            }
+        } catch (Exception e) {
+            log.warn("IpRateLimitComponent.decode --> Failed to decode blacklist of {}: {}", clientIp, e.getMessage());
+        } finally {
+            byteBuf.release();
+        }
+        IpBlackInfoBO ipBlackInfoBO = new IpBlackInfoBO();
+        ipBlackInfoBO.setClientIp(clientIp);
+        return ipBlackInfoBO;
+    }
+
+}
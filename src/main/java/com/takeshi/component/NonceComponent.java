@@ -0,0 +1,64 @@
+package com.takeshi.component;
+
+import com.takeshi.util.DeadlineUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 参数签名的nonce存储，同一个nonce只允许使用一次
+ * <p>Redis中通过一次SET NX EX原子地占用nonce，并发的相同nonce只有一个能成功，最多等待到请求的截止时间</p>
+ * <p>指标：takeshi.sign.nonce.replay（Redis确认已使用而被拒绝的nonce）</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Component
+public class NonceComponent {
+
+    private final RedissonClient redissonClient;
+
+    private final Counter replayCounter;
+
+    /**
+     * 构造函数
+     *
+     * @param redissonClient redissonClient
+     * @param meterRegistry  meterRegistry
+     */
+    public NonceComponent(RedissonClient redissonClient, MeterRegistry meterRegistry) {
+        this.redissonClient = redissonClient;
+        this.replayCounter = Counter.builder("takeshi.sign.nonce.replay").description("Replayed nonces rejected by Redis").register(meterRegistry);
+    }
+
+    /**
+     * 使用nonce，首次使用返回true，已经使用过返回false
+     *
+     * @param key    nonce保存在Redis中的key
+     * @param nonce  nonce
+     * @param expire nonce的有效期
+     * @return boolean
+     */
+    public boolean tryUse(String key, String nonce, Duration expire) {
+        boolean used = !DeadlineUtil.join(redissonClient.getBucket(key, StringCodec.INSTANCE).setIfAbsentAsync(nonce, expire));
+        if (used) {
+            replayCounter.increment();
+        }
+        return !used;
+    }
+
+    /**
+     * nonce是否未被使用过，不会占用nonce
+     *
+     * @param key    nonce保存在Redis中的key
+     * @param expire nonce的有效期
+     * @return boolean
+     */
+    public boolean isUnused(String key, Duration expire) {
+        return !DeadlineUtil.join(redissonClient.getBucket(key, StringCodec.INSTANCE).isExistsAsync());
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.takeshi.component;
+
+import com.takeshi.config.properties.TakeshiProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 系统日志按分钟预聚合的接口统计，需要开启 takeshi.sys-log.rollup.enabled，只需要数据库中存在下面表即可
+ * <p>每个接口（方法名 + 请求路径的模板）每分钟一行：请求数、失败数、总耗时、最大耗时、HdrHistogram压缩后的耗时分布，
+ * 按请求结束的时间统计，被采样丢弃的日志也会统计；每个应用实例各自写入，查询时再合并，参考{@link com.takeshi.mybatisplus.ISysLogRollupService}</p>
+ * <pre>{@code
+ * CREATE TABLE `tb_sys_log_rollup`
+ * (
+ *     `rollup_id`         bigint       NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+ *     `bucket_time`       timestamp(3) NOT NULL COMMENT '统计的分钟',
+ *     `method_name`       varchar(300) COLLATE utf8mb4_general_ci DEFAULT NULL COMMENT '请求的方法，带包名类名的完整的方法名',
+ *     `request_url`       varchar(300) COLLATE utf8mb4_general_ci DEFAULT NULL COMMENT '请求路径的模板',
+ *     `request_count`     bigint       NOT NULL COMMENT '请求数',
+ *     `error_count`       bigint       NOT NULL COMMENT '失败数',
+ *     `total_time_millis` bigint       NOT NULL COMMENT '总耗时（单位：毫秒）',
+ *     `max_time_millis`   bigint       NOT NULL COMMENT '最大耗时（单位：毫秒）',
+ *     `histogram`         varbinary(4096)                         DEFAULT NULL COMMENT '耗时分布',
+ *     `create_time`       timestamp(3)                            DEFAULT NULL COMMENT '创建时间',
+ *     PRIMARY KEY (`rollup_id`),
+ *     KEY `idx_bucket_time_method_name` (`bucket_time`, `method_name`)
+ * ) ENGINE = InnoDB
+ *   DEFAULT CHARSET = utf8mb4
+ *   COLLATE = utf8mb4_general_ci COMMENT ='系统操作日志按分钟统计';
+ * }
+ * </pre>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+public class SysLogRollupComponent implements SmartInitializingSingleton {
+
+    /**
+     * 耗时分布的精度（有效数字位数）
+     */
+    public static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final String INSERT_SQL = "INSERT INTO tb_sys_log_rollup (bucket_time, method_name, request_url, request_count, error_count, total_time_millis, "
+            + "max_time_millis, histogram, create_time) VALUES ";
+
+    private static final String VALUES_SQL = "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 分钟结束后等待多久再写入，等待这一分钟内结束的请求统计完成
+     */
+    private static final long GRACE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * 检查是否有需要写入的统计的间隔
+     */
+    private static final long FLUSH_PERIOD_SECONDS = 10;
+
+    private static final int BATCH_SIZE = 100;
+
+    private final DataSource dataSource;
+
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    private final TakeshiProperties.Rollup rollup;
+
+    private final long highestTrackableMillis;
+
+    private final Map<RollupKey, Bucket> bucketMap = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param dataSource               dataSource
+     * @param scheduledExecutorService scheduledExecutorService
+     * @param takeshiProperties        takeshiProperties
+     */
+    public SysLogRollupComponent(DataSource dataSource, ScheduledExecutorService scheduledExecutorService, TakeshiProperties takeshiProperties) {
+        this.dataSource = dataSource;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.rollup = takeshiProperties.getSysLog().getRollup();
+        this.highestTrackableMillis = Math.max(rollup.getMaxLatency().toMillis(), 2);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (rollup.isEnabled()) {
+            scheduledExecutorService.scheduleWithFixedDelay(() -> this.flush(false), FLUSH_PERIOD_SECONDS, FLUSH_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 统计一次请求
+     *
+     * @param methodName      完整的方法名
+     * @param requestUrl      请求路径的模板，例如：/user/{id}
+     * @param totalTimeMillis 接口总耗时
+     * @param successful      是否成功
+     */
+    public void record(String methodName, String requestUrl, long totalTimeMillis, boolean successful) {
+        if (!rollup.isEnabled()) {
+            return;
+        }
+        long minute = System.currentTimeMillis() / MINUTE_MILLIS * MINUTE_MILLIS;
+        Bucket bucket = bucketMap.computeIfAbsent(new RollupKey(minute, methodName, requestUrl), key -> new Bucket(highestTrackableMillis));
+        long value = Math.min(Math.max(totalTimeMillis, 0), highestTrackableMillis);
+        bucket.requestCount.increment();
+        if (!successful) {
+            bucket.errorCount.increment();
+        }
+        bucket.totalTimeMillis.add(value);
+        bucket.maxTimeMillis.accumulate(value);
+        bucket.recorder.recordValue(value);
+    }
+
+    /**
+     * 应用关闭时写入所有的统计
+     */
+    @PreDestroy
+    public void destroy() {
+        if (rollup.isEnabled()) {
+            this.flush(true);
+        }
+    }
+
+    /**
+     * 写入已经结束的分钟的统计
+     *
+     * @param all 是否写入所有的统计，包括当前分钟
+     */
+    private void flush(boolean all) {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<RollupKey, Bucket>> list = new ArrayList<>();
+        for (RollupKey key : bucketMap.keySet()) {
+            if (all || key.minute() + MINUTE_MILLIS + GRACE_MILLIS <= now) {
+                Bucket bucket = bucketMap.remove(key);
+                if (bucket != null) {
+                    list.add(Map.entry(key, bucket));
+                }
+            }
+        }
+        for (int i = 0; i < list.size(); i += BATCH_SIZE) {
+            List<Map.Entry<RollupKey, Bucket>> batch = list.subList(i, Math.min(i + BATCH_SIZE, list.size()));
+            try {
+                this.insert(batch);
+            } catch (Exception e) {
+                log.error("SysLogRollupComponent.flush --> Failed to insert {} sys log rollups: ", batch.size(), e);
+            }
+        }
+    }
+
+    private void insert(List<Map.Entry<RollupKey, Bucket>> batch) throws SQLException {
+        String sql = INSERT_SQL + String.join(", ", Collections.nCopies(batch.size(), VALUES_SQL));
+        Timestamp createTime = Timestamp.from(Instant.now());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (Map.Entry<RollupKey, Bucket> entry : batch) {
+                RollupKey key = entry.getKey();
+                Bucket bucket = entry.getValue();
+                preparedStatement.setTimestamp(index++, new Timestamp(key.minute()));
+                preparedStatement.setString(index++, key.methodName());
+                preparedStatement.setString(index++, key.requestUrl());
+                preparedStatement.setLong(index++, bucket.requestCount.sum());
+                preparedStatement.setLong(index++, bucket.errorCount.sum());
+                preparedStatement.setLong(index++, bucket.totalTimeMillis.sum());
+                preparedStatement.setLong(index++, bucket.maxTimeMillis.get());
+                preparedStatement.setBytes(index++, encode(bucket.recorder.getIntervalHistogram()));
+                preparedStatement.setTimestamp(index++, createTime);
+            }
+            preparedStatement.executeUpdate();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * 压缩耗时分布
+     *
+     * @param histogram histogram
+     * @return 字节数组
+     */
+    public static byte[] encode(Histogram histogram) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(byteBuffer);
+        return Arrays.copyOf(byteBuffer.array(), length);
+    }
+
+    /**
+     * 统计的维度
+     *
+     * @param minute     分钟开始的时间戳
+     * @param methodName 完整的方法名
+     * @param requestUrl 请求路径的模板
+     */
+    private record RollupKey(long minute, String methodName, String requestUrl) {
+    }
+
+    /**
+     * 一个接口一分钟内的统计
+     */
+    private static final class Bucket {
+
+        private final LongAdder requestCount = new LongAdder();
+
+        private final LongAdder errorCount = new LongAdder();
+
+        private final LongAdder totalTimeMillis = new LongAdder();
+
+        private final LongAccumulator maxTimeMillis = new LongAccumulator(Long::max, 0);
+
+        private final Recorder recorder;
+
+        private Bucket(long highestTrackableMillis) {
+            this.recorder = new Recorder(highestTrackableMillis, SIGNIFICANT_DIGITS);
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.takeshi.component;
+
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.enums.LogTypeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 系统日志的采样，在请求结束后根据结果决定是否记录，需要开启 takeshi.sys-log.sampling.enabled
+ * <p>失败的请求、慢请求、alwaysKeepLogTypes中的日志类型总是记录，其余的按接口或日志类型的采样率随机记录</p>
+ * <p>指标：takeshi.sys-log.sampled-out（log_type），被采样丢弃的日志数量</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Component
+public class SysLogSampler {
+
+    private final TakeshiProperties.Sampling sampling;
+
+    /**
+     * key：完整的方法名，value：接口配置的采样率，没有配置时为-1
+     */
+    private final Map<String, Double> endpointRateCache = new ConcurrentHashMap<>();
+
+    private final Map<LogTypeEnum, Counter> sampledOutCounters = new EnumMap<>(LogTypeEnum.class);
+
+    /**
+     * 构造函数
+     *
+     * @param takeshiProperties takeshiProperties
+     * @param meterRegistry     meterRegistry
+     */
+    public SysLogSampler(TakeshiProperties takeshiProperties, MeterRegistry meterRegistry) {
+        this.sampling = takeshiProperties.getSysLog().getSampling();
+        for (LogTypeEnum logType : LogTypeEnum.values()) {
+            this.sampledOutCounters.put(logType, Counter.builder("takeshi.sys-log.sampled-out").tag("log_type", logType.name()).register(meterRegistry));
+        }
+    }
+
+    /**
+     * 是否记录这条系统日志
+     *
+     * @param logType         日志类型
+     * @param methodName      完整的方法名
+     * @param totalTimeMillis 接口总耗时
+     * @param successful      是否成功
+     * @return boolean
+     */
+    public boolean sample(LogTypeEnum logType, String methodName, long totalTimeMillis, boolean successful) {
+        if (!sampling.isEnabled()
+                || !successful
+                || totalTimeMillis >= sampling.getSlowThreshold().toMillis()
+                || sampling.getAlwaysKeepLogTypes().contains(logType)) {
+            return true;
+        }
+        double rate = this.rate(logType, methodName);
+        if (rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate)) {
+            return true;
+        }
+        sampledOutCounters.get(logType).increment();
+        return false;
+    }
+
+    /**
+     * 获取采样率，优先级：接口 > 日志类型 > 默认
+     *
+     * @param logType    日志类型
+     * @param methodName 完整的方法名
+     * @return 采样率
+     */
+    private double rate(LogTypeEnum logType, String methodName) {
+        if (StrUtil.isNotEmpty(methodName) && !sampling.getEndpointRates().isEmpty()) {
+            double endpointRate = endpointRateCache.computeIfAbsent(methodName, key -> {
+                Double rate = sampling.getEndpointRates().get(key);
+                if (ObjUtil.isNull(rate)) {
+                    // Controller的完整类名
+                    rate = sampling.getEndpointRates().get(StrUtil.subBefore(key, StrUtil.DOT, true));
+                }
+                return ObjUtil.defaultIfNull(rate, -1D);
+            });
+            if (endpointRate >= 0) {
+                return endpointRate;
+            }
+        }
+        return sampling.getLogTypeRates().getOrDefault(logType, sampling.getRate());
+    }
+
+}
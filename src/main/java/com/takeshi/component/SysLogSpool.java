@@ -0,0 +1,527 @@
+package com.takeshi.component;
+
+import com.takeshi.pojo.basic.TbSysLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 系统日志的本地磁盘缓冲，数据库不可用时{@link SysLogWriter}把日志追加到这里，数据库恢复后再按顺序批量写回数据库
+ * <p>由多个固定大小的段文件（00000000000000000000.spool）组成，通过内存映射追加写入，写满后切换到下一个段文件；
+ * 每条记录的格式为：长度（int）+ CRC32（int）+ 日志的二进制数据，长度为-1表示段文件结束；
+ * 已写回数据库的位置保存在checkpoint文件中，重启后从该位置继续写回</p>
+ * <p style="color:yellow;">只能由SysLogWriter的写入线程使用，不是线程安全的</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+final class SysLogSpool implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * 记录头部：长度 + CRC32
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 段文件结束标记
+     */
+    private static final int END_OF_SEGMENT = -1;
+
+    /**
+     * 记录格式的版本
+     */
+    private static final byte VERSION = 1;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    /**
+     * 最多保留的段文件数量
+     */
+    private final long maxSegments;
+
+    private final MappedByteBuffer checkpoint;
+
+    private volatile long writeSegment;
+
+    private volatile int writeOffset;
+
+    private MappedByteBuffer writeBuffer;
+
+    private volatile long readSegment;
+
+    private volatile int readOffset;
+
+    private long mappedReadSegment = -1;
+
+    private MappedByteBuffer readBuffer;
+
+    /**
+     * 调用{@link #peek}后的读取位置，调用{@link #commit()}后才生效
+     */
+    private long peekSegment;
+
+    private int peekOffset;
+
+    /**
+     * 调用{@link #peek}读取的每条日志之后的位置，用于只提交前面的一部分日志
+     */
+    private long[] recordSegments = new long[0];
+
+    private int[] recordOffsets = new int[0];
+
+    private int peekCount;
+
+    /**
+     * 最早的一条未写回数据库的日志的创建时间，没有时为0
+     */
+    private volatile long oldestPendingMillis;
+
+    /**
+     * 打开（不存在时创建）本地缓冲目录，恢复写入和读取的位置
+     *
+     * @param directory   目录
+     * @param segmentSize 段文件大小
+     * @param maxSize     最多占用的磁盘空间
+     * @throws IOException IOException
+     */
+    SysLogSpool(Path directory, int segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSize / segmentSize, 2);
+        Files.createDirectories(directory);
+        this.checkpoint = this.map(directory.resolve(CHECKPOINT_FILE), Long.BYTES + Integer.BYTES);
+        this.readSegment = this.checkpoint.getLong(0);
+        this.readOffset = this.checkpoint.getInt(Long.BYTES);
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.map(item -> item.getFileName().toString())
+                    .filter(item -> item.endsWith(SEGMENT_SUFFIX))
+                    .map(item -> Long.parseLong(item.substring(0, item.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::add);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid sys log spool segment in " + directory, e);
+        }
+        for (Long segment : segments) {
+            if (segment < this.readSegment) {
+                // 已经全部写回数据库，但是删除失败的段文件
+                Files.deleteIfExists(this.segmentPath(segment));
+            }
+        }
+        segments.removeIf(item -> item < this.readSegment);
+        if (segments.isEmpty()) {
+            this.readOffset = 0;
+            this.writeSegment = this.readSegment;
+            this.writeBuffer = this.map(this.segmentPath(this.writeSegment), segmentSize);
+            this.writeOffset = 0;
+        } else {
+            if (segments.get(0) != this.readSegment) {
+                this.readSegment = segments.get(0);
+                this.readOffset = 0;
+            }
+            this.writeSegment = segments.get(segments.size() - 1);
+            this.writeBuffer = this.map(this.segmentPath(this.writeSegment), segmentSize);
+            this.writeOffset = this.recover(this.writeBuffer);
+            if (this.readSegment == this.writeSegment && this.readOffset > this.writeOffset) {
+                this.readOffset = this.writeOffset;
+            }
+        }
+        this.peekSegment = this.readSegment;
+        this.peekOffset = this.readOffset;
+        if (!this.isEmpty()) {
+            log.warn("SysLogSpool.init --> {} bytes of sys logs are waiting to be written to the database", this.size());
+        }
+    }
+
+    /**
+     * 是否所有日志都已写回数据库
+     *
+     * @return boolean
+     */
+    boolean isEmpty() {
+        return this.readSegment == this.writeSegment && this.readOffset >= this.writeOffset;
+    }
+
+    /**
+     * 未写回数据库的日志占用的大小
+     *
+     * @return 字节数
+     */
+    long size() {
+        long readSegment = this.readSegment;
+        int readOffset = this.readOffset;
+        long writeSegment = this.writeSegment;
+        int writeOffset = this.writeOffset;
+        return Math.max((writeSegment - readSegment) * this.segmentSize + writeOffset - readOffset, 0);
+    }
+
+    /**
+     * 最早的一条未写回数据库的日志距离现在的时间
+     *
+     * @return 毫秒，没有未写回的日志时为0
+     */
+    long lagMillis() {
+        long oldest = this.oldestPendingMillis;
+        return oldest == 0 ? 0 : Math.max(System.currentTimeMillis() - oldest, 0);
+    }
+
+    /**
+     * 追加日志，磁盘缓冲已满或者日志太大时后面的日志不再追加
+     *
+     * @param batch 日志
+     * @return 追加成功的条数
+     * @throws IOException IOException
+     */
+    int append(List<TbSysLog> batch) throws IOException {
+        int appended = 0;
+        for (TbSysLog tbSysLog : batch) {
+            byte[] payload = this.encode(tbSysLog);
+            int recordSize = HEADER_SIZE + payload.length;
+            if (recordSize > this.segmentSize) {
+                log.warn("SysLogSpool.append --> Sys log is larger than the segment size: {} bytes", recordSize);
+                continue;
+            }
+            if (this.writeOffset + recordSize > this.segmentSize && !this.roll()) {
+                break;
+            }
+            if (this.isEmpty()) {
+                this.oldestPendingMillis = this.createTimeMillis(tbSysLog);
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(payload);
+            this.writeBuffer.put(this.writeOffset + HEADER_SIZE, payload);
+            this.writeBuffer.putInt(this.writeOffset + Integer.BYTES, (int) crc32.getValue());
+            // 最后写入长度，读取到长度不为0时记录已经完整
+            this.writeBuffer.putInt(this.writeOffset, payload.length);
+            this.writeOffset += recordSize;
+            appended++;
+        }
+        this.writeBuffer.force();
+        return appended;
+    }
+
+    /**
+     * 按顺序读取未写回数据库的日志，调用{@link #commit()}之后才会移动读取位置
+     *
+     * @param max 最多读取的条数
+     * @return 日志
+     * @throws IOException IOException
+     */
+    List<TbSysLog> peek(int max) throws IOException {
+        List<TbSysLog> list = new ArrayList<>(max);
+        if (this.recordSegments.length < max) {
+            this.recordSegments = new long[max];
+            this.recordOffsets = new int[max];
+        }
+        long segment = this.readSegment;
+        int offset = this.readOffset;
+        while (list.size() < max && !(segment == this.writeSegment && offset >= this.writeOffset)) {
+            MappedByteBuffer buffer = segment == this.writeSegment ? this.writeBuffer : this.readBuffer(segment);
+            int length = offset + HEADER_SIZE <= this.segmentSize ? buffer.getInt(offset) : END_OF_SEGMENT;
+            if (length <= 0 || offset + HEADER_SIZE + length > this.segmentSize) {
+                if (segment == this.writeSegment) {
+                    break;
+                }
+                // 段文件结束
+                segment++;
+                offset = 0;
+                continue;
+            }
+            ByteBuffer payload = buffer.slice(offset + HEADER_SIZE, length);
+            CRC32 crc32 = new CRC32();
+            crc32.update(payload.duplicate());
+            TbSysLog tbSysLog = (int) crc32.getValue() == buffer.getInt(offset + Integer.BYTES) ? this.decode(payload) : null;
+            if (tbSysLog == null) {
+                log.error("SysLogSpool.peek --> Corrupted sys log record in segment {} at offset {}, skipping the rest of the segment", segment, offset);
+                if (segment == this.writeSegment) {
+                    offset = this.writeOffset;
+                    break;
+                }
+                segment++;
+                offset = 0;
+                continue;
+            }
+            list.add(tbSysLog);
+            offset += HEADER_SIZE + length;
+            this.recordSegments[list.size() - 1] = segment;
+            this.recordOffsets[list.size() - 1] = offset;
+        }
+        this.peekSegment = segment;
+        this.peekOffset = offset;
+        this.peekCount = list.size();
+        if (!list.isEmpty()) {
+            this.oldestPendingMillis = this.createTimeMillis(list.get(0));
+        }
+        return list;
+    }
+
+    /**
+     * 上一次{@link #peek}读取的日志已经写回数据库，移动读取位置并删除已经全部写回的段文件
+     *
+     * @throws IOException IOException
+     */
+    void commit() throws IOException {
+        this.commit(this.peekCount);
+    }
+
+    /**
+     * 上一次{@link #peek}读取的前count条日志已经写回数据库，移动读取位置并删除已经全部写回的段文件
+     * <p>peek没有读取到日志但是跳过了段文件结束标记或者损坏的记录时，count为0也会移动到peek结束的位置，否则读取位置会一直停留在原处</p>
+     *
+     * @param count 已经写回的条数
+     * @throws IOException IOException
+     */
+    void commit(int count) throws IOException {
+        if (count <= 0 && this.peekCount > 0) {
+            return;
+        }
+        long commitSegment = count >= this.peekCount ? this.peekSegment : this.recordSegments[count - 1];
+        int commitOffset = count >= this.peekCount ? this.peekOffset : this.recordOffsets[count - 1];
+        for (long segment = this.readSegment; segment < commitSegment; segment++) {
+            if (segment == this.mappedReadSegment) {
+                this.readBuffer = null;
+                this.mappedReadSegment = -1;
+            }
+            try {
+                Files.deleteIfExists(this.segmentPath(segment));
+            } catch (IOException e) {
+                // 重启时会再次删除
+                log.warn("SysLogSpool.commit --> Failed to delete segment {}: {}", segment, e.getMessage());
+            }
+        }
+        this.checkpoint.putLong(0, commitSegment);
+        this.checkpoint.putInt(Long.BYTES, commitOffset);
+        this.checkpoint.force();
+        this.readSegment = commitSegment;
+        this.readOffset = commitOffset;
+        // 只提交了一部分时，peek结束的位置已经失效
+        this.peekSegment = commitSegment;
+        this.peekOffset = commitOffset;
+        this.peekCount = 0;
+        if (this.isEmpty()) {
+            this.oldestPendingMillis = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.writeBuffer.force();
+        this.checkpoint.force();
+    }
+
+    /**
+     * 当前段文件已写满，切换到下一个段文件
+     *
+     * @return 磁盘缓冲已满时返回false
+     * @throws IOException IOException
+     */
+    private boolean roll() throws IOException {
+        if (this.writeSegment + 1 - this.readSegment >= this.maxSegments) {
+            log.error("SysLogSpool.roll --> Sys log spool is full: {} bytes", this.size());
+            return false;
+        }
+        if (this.writeOffset + Integer.BYTES <= this.segmentSize) {
+            this.writeBuffer.putInt(this.writeOffset, END_OF_SEGMENT);
+        }
+        this.writeBuffer.force();
+        MappedByteBuffer buffer = this.map(this.segmentPath(this.writeSegment + 1), this.segmentSize);
+        this.writeBuffer = buffer;
+        this.writeOffset = 0;
+        this.writeSegment++;
+        return true;
+    }
+
+    /**
+     * 找到最后一个段文件中的写入位置，丢弃进程崩溃时没有写完整的记录
+     *
+     * @param buffer 段文件
+     * @return 写入位置
+     */
+    private int recover(MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + HEADER_SIZE <= this.segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                return offset;
+            }
+            if (length == END_OF_SEGMENT) {
+                return this.segmentSize;
+            }
+            boolean valid = length > 0 && offset + HEADER_SIZE + length <= this.segmentSize;
+            if (valid) {
+                CRC32 crc32 = new CRC32();
+                crc32.update(buffer.slice(offset + HEADER_SIZE, length));
+                valid = (int) crc32.getValue() == buffer.getInt(offset + Integer.BYTES);
+            }
+            if (!valid) {
+                log.warn("SysLogSpool.recover --> Discarding incomplete sys log record in segment {} at offset {}", this.writeSegment, offset);
+                for (int i = offset; i < this.segmentSize; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+                return offset;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private MappedByteBuffer readBuffer(long segment) throws IOException {
+        if (this.mappedReadSegment != segment) {
+            this.readBuffer = this.map(this.segmentPath(segment), this.segmentSize);
+            this.mappedReadSegment = segment;
+        }
+        return this.readBuffer;
+    }
+
+    private Path segmentPath(long segment) {
+        return this.directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(Path path, int size) throws IOException {
+        // 映射之后关闭FileChannel不影响MappedByteBuffer的使用
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private long createTimeMillis(TbSysLog tbSysLog) {
+        Instant createTime = tbSysLog.getCreateTime();
+        return createTime == null ? System.currentTimeMillis() : createTime.toEpochMilli();
+    }
+
+    private byte[] encode(TbSysLog tbSysLog) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        out.writeByte(VERSION);
+        this.writeString(out, tbSysLog.getLogType());
+        Object loginId = tbSysLog.getLoginId();
+        if (loginId == null) {
+            out.writeByte(0);
+        } else if (loginId instanceof Long || loginId instanceof Integer) {
+            out.writeByte(1);
+            out.writeLong(((Number) loginId).longValue());
+        } else {
+            out.writeByte(2);
+            this.writeString(out, String.valueOf(loginId));
+        }
+        this.writeBytes(out, tbSysLog.getClientIp());
+        this.writeString(out, tbSysLog.getUserAgent());
+        this.writeString(out, tbSysLog.getHttpMethod());
+        this.writeString(out, tbSysLog.getMethodName());
+        this.writeString(out, tbSysLog.getRequestUrl());
+        this.writeString(out, tbSysLog.getRequestHeader());
+        this.writeString(out, tbSysLog.getRequestParams());
+        this.writeString(out, tbSysLog.getResponseData());
+        this.writeString(out, tbSysLog.getTraceId());
+        out.writeByte(tbSysLog.getSuccessful() == null ? -1 : tbSysLog.getSuccessful() ? 1 : 0);
+        this.writeInstant(out, tbSysLog.getRequestTime());
+        out.writeBoolean(tbSysLog.getCostTimeMillis() != null);
+        out.writeLong(tbSysLog.getCostTimeMillis() == null ? 0 : tbSysLog.getCostTimeMillis());
+        this.writeInstant(out, tbSysLog.getCreateTime());
+        this.writeInstant(out, tbSysLog.getUpdateTime());
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * 解析日志的二进制数据
+     *
+     * @param payload 二进制数据
+     * @return 格式错误时返回NULL
+     */
+    private TbSysLog decode(ByteBuffer payload) {
+        try {
+            if (payload.get() != VERSION) {
+                return null;
+            }
+            TbSysLog tbSysLog = new TbSysLog();
+            tbSysLog.setLogType(this.readString(payload));
+            byte loginIdType = payload.get();
+            if (loginIdType == 1) {
+                tbSysLog.setLoginId(payload.getLong());
+            } else if (loginIdType == 2) {
+                tbSysLog.setLoginId(this.readString(payload));
+            }
+            tbSysLog.setClientIp(this.readBytes(payload));
+            tbSysLog.setUserAgent(this.readString(payload));
+            tbSysLog.setHttpMethod(this.readString(payload));
+            tbSysLog.setMethodName(this.readString(payload));
+            tbSysLog.setRequestUrl(this.readString(payload));
+            tbSysLog.setRequestHeader(this.readString(payload));
+            tbSysLog.setRequestParams(this.readString(payload));
+            tbSysLog.setResponseData(this.readString(payload));
+            tbSysLog.setTraceId(this.readString(payload));
+            byte successful = payload.get();
+            tbSysLog.setSuccessful(successful < 0 ? null : successful == 1);
+            tbSysLog.setRequestTime(this.readInstant(payload));
+            boolean hasCostTimeMillis = payload.get() != 0;
+            long costTimeMillis = payload.getLong();
+            tbSysLog.setCostTimeMillis(hasCostTimeMillis ? costTimeMillis : null);
+            tbSysLog.setCreateTime(this.readInstant(payload));
+            tbSysLog.setUpdateTime(this.readInstant(payload));
+            return tbSysLog;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        this.writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeLong(value == null ? 0 : value.getEpochSecond());
+        out.writeInt(value == null ? 0 : value.getNano());
+    }
+
+    private String readString(ByteBuffer payload) {
+        byte[] bytes = this.readBytes(payload);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private Instant readInstant(ByteBuffer payload) {
+        boolean present = payload.get() != 0;
+        long epochSecond = payload.getLong();
+        int nano = payload.getInt();
+        return present ? Instant.ofEpochSecond(epochSecond, nano) : null;
+    }
+
+}
@@ -0,0 +1,481 @@
+package com.takeshi.component;
+
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.pojo.basic.TbSysLog;
+import com.takeshi.util.SysLogPayloadUtil;
+import com.takeshi.util.TakeshiUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 系统日志写入器，接口请求只把日志放入有界的无锁环形缓冲区，由单独的写入线程批量插入数据库
+ * <p>缓冲区满时最多等待takeshi.sys-log.offer-timeout，仍然放不进去则丢弃这条日志，不会阻塞接口请求；
+ * 写入线程在累计到batchSize条或距离上次写入超过flushInterval时，使用一条多行INSERT语句写入</p>
+ * <p>开启takeshi.sys-log.spool.enabled后，数据库不可用（连接失败或超时）时日志会追加到本地磁盘缓冲{@link SysLogSpool}，
+ * 之后的日志也先追加到磁盘缓冲以保持顺序，由写入线程按replayInterval重试，数据库恢复后按顺序批量写回；
+ * 数据本身有问题（例如字段太长）导致整批写入失败时逐条重试，只跳过有问题的日志</p>
+ * <p>指标：takeshi.sys-log（result=written、dropped、failed、spooled、replayed）、takeshi.sys-log.buffer.size、
+ * takeshi.sys-log.spool.size（未写回的字节数）、takeshi.sys-log.spool.lag（最早的未写回日志距离现在的时间）</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+public class SysLogWriter implements SmartInitializingSingleton {
+
+    private static final String INSERT_SQL = "INSERT INTO tb_sys_log (log_type, login_id, client_ip, user_agent, http_method, method_name, request_url, request_header, "
+            + "request_params, response_data, trace_id, successful, request_time, cost_time_millis, create_time, update_time) VALUES ";
+
+    private static final String VALUES_SQL = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 缓冲区为空时写入线程的休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final DataSource dataSource;
+
+    private final TakeshiProperties.SysLog sysLog;
+
+    private final RingBuffer<TbSysLog> ringBuffer;
+
+    private final Counter writtenCounter;
+
+    private final Counter droppedCounter;
+
+    private final Counter failedCounter;
+
+    private final Counter spooledCounter;
+
+    private final Counter replayedCounter;
+
+    /**
+     * 本地磁盘缓冲，没有开启时为NULL
+     */
+    private final SysLogSpool spool;
+
+    private volatile boolean running;
+
+    private Thread writerThread;
+
+    /**
+     * 构造函数
+     *
+     * @param dataSource        dataSource
+     * @param takeshiProperties takeshiProperties
+     * @param meterRegistry     meterRegistry
+     */
+    public SysLogWriter(DataSource dataSource, TakeshiProperties takeshiProperties, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.sysLog = takeshiProperties.getSysLog();
+        this.ringBuffer = new RingBuffer<>(sysLog.getBufferSize());
+        this.writtenCounter = Counter.builder("takeshi.sys-log").tag("result", "written").register(meterRegistry);
+        this.droppedCounter = Counter.builder("takeshi.sys-log").tag("result", "dropped").register(meterRegistry);
+        this.failedCounter = Counter.builder("takeshi.sys-log").tag("result", "failed").register(meterRegistry);
+        this.spooledCounter = Counter.builder("takeshi.sys-log").tag("result", "spooled").register(meterRegistry);
+        this.replayedCounter = Counter.builder("takeshi.sys-log").tag("result", "replayed").register(meterRegistry);
+        Gauge.builder("takeshi.sys-log.buffer.size", this.ringBuffer, RingBuffer::size).register(meterRegistry);
+        this.spool = this.openSpool(sysLog.getSpool());
+        if (this.spool != null) {
+            Gauge.builder("takeshi.sys-log.spool.size", this.spool, SysLogSpool::size).baseUnit("bytes").register(meterRegistry);
+            TimeGauge.builder("takeshi.sys-log.spool.lag", this.spool, TimeUnit.MILLISECONDS, SysLogSpool::lagMillis).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.running = true;
+        this.writerThread = new Thread(this::run, "takeshi-sys-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 放入一条系统日志，缓冲区满时最多等待offerTimeout，之后丢弃
+     *
+     * @param tbSysLog 系统日志
+     * @return 是否放入成功
+     */
+    public boolean offer(TbSysLog tbSysLog) {
+        if (ringBuffer.offer(tbSysLog)) {
+            return true;
+        }
+        long timeoutNanos = sysLog.getOfferTimeout().toNanos();
+        if (timeoutNanos > 0) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            LockSupport.unpark(writerThread);
+            while (System.nanoTime() - deadline < 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                if (ringBuffer.offer(tbSysLog)) {
+                    return true;
+                }
+            }
+        }
+        droppedCounter.increment();
+        return false;
+    }
+
+    /**
+     * 停止写入线程，并写入缓冲区中剩余的日志
+     */
+    @PreDestroy
+    public void destroy() {
+        this.running = false;
+        if (this.writerThread != null) {
+            LockSupport.unpark(this.writerThread);
+            try {
+                this.writerThread.join(Math.max(sysLog.getShutdownTimeout().toMillis(), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.spool != null && (this.writerThread == null || !this.writerThread.isAlive())) {
+            this.spool.close();
+        }
+    }
+
+    /**
+     * 打开本地磁盘缓冲，打开失败时不使用磁盘缓冲
+     *
+     * @param spoolProperties 配置
+     * @return SysLogSpool
+     */
+    private SysLogSpool openSpool(TakeshiProperties.Spool spoolProperties) {
+        if (!spoolProperties.isEnabled()) {
+            return null;
+        }
+        Path directory = StrUtil.isBlank(spoolProperties.getDirectory())
+                ? Path.of(System.getProperty("java.io.tmpdir"), "takeshi", "sys-log-spool")
+                : Path.of(spoolProperties.getDirectory());
+        try {
+            int segmentSize = (int) Math.min(spoolProperties.getSegmentSize().toBytes(), Integer.MAX_VALUE);
+            return new SysLogSpool(directory, segmentSize, spoolProperties.getMaxSize().toBytes());
+        } catch (IOException | RuntimeException e) {
+            log.error("SysLogWriter.openSpool --> Failed to open sys log spool {}, continue without it: ", directory, e);
+            return null;
+        }
+    }
+
+    private void run() {
+        int batchSize = sysLog.getBatchSize();
+        long flushIntervalNanos = sysLog.getFlushInterval().toNanos();
+        long replayIntervalNanos = sysLog.getSpool().getReplayInterval().toNanos();
+        List<TbSysLog> batch = new ArrayList<>(batchSize);
+        // 当前批次中第一条日志的放入时间
+        long batchStartNanos = 0;
+        // 下一次写回磁盘缓冲中的日志的时间
+        long nextReplayNanos = System.nanoTime();
+        while (running || ringBuffer.size() > 0) {
+            TbSysLog tbSysLog = ringBuffer.poll();
+            if (tbSysLog != null) {
+                if (batch.isEmpty()) {
+                    batchStartNanos = System.nanoTime();
+                }
+                batch.add(tbSysLog);
+            }
+            if (batch.size() >= batchSize || (!batch.isEmpty() && ((!running && tbSysLog == null) || System.nanoTime() - batchStartNanos >= flushIntervalNanos))) {
+                this.flush(batch);
+            }
+            boolean replayed = false;
+            if (spool != null && running && !spool.isEmpty() && System.nanoTime() - nextReplayNanos >= 0) {
+                replayed = this.replay(batchSize);
+                if (!replayed) {
+                    nextReplayNanos = System.nanoTime() + replayIntervalNanos;
+                }
+            }
+            if (tbSysLog == null && !replayed && running) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        if (!batch.isEmpty()) {
+            this.flush(batch);
+        }
+        log.info("SysLogWriter.run --> Sys log writer stopped");
+    }
+
+    void flush(List<TbSysLog> batch) {
+        try {
+            if (spool != null && !spool.isEmpty()) {
+                // 磁盘缓冲中还有没写回的日志，为了保持顺序，直接追加到磁盘缓冲
+                this.spool(batch);
+                return;
+            }
+            int processed = this.write(batch, writtenCounter);
+            if (processed < batch.size()) {
+                List<TbSysLog> remaining = batch.subList(processed, batch.size());
+                if (spool != null) {
+                    log.warn("SysLogWriter.flush --> Database is unavailable, spooling {} sys logs to disk", remaining.size());
+                    this.spool(remaining);
+                } else {
+                    failedCounter.increment(remaining.size());
+                    log.error("SysLogWriter.flush --> Database is unavailable, dropping {} sys logs", remaining.size());
+                }
+            }
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            log.error("SysLogWriter.flush --> Failed to insert {} sys logs: ", batch.size(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void spool(List<TbSysLog> batch) {
+        int appended = 0;
+        try {
+            appended = spool.append(batch);
+        } catch (IOException | RuntimeException e) {
+            log.error("SysLogWriter.spool --> Failed to append sys logs to spool: ", e);
+        }
+        spooledCounter.increment(appended);
+        failedCounter.increment(batch.size() - appended);
+    }
+
+    /**
+     * 把磁盘缓冲中最早的一批日志写回数据库
+     *
+     * @param batchSize 最多写回的条数
+     * @return 没有写回任何日志、数据库仍然不可用或者读写磁盘缓冲失败时返回false，写入线程会等待replayInterval后再重试
+     */
+    boolean replay(int batchSize) {
+        List<TbSysLog> batch;
+        try {
+            batch = spool.peek(batchSize);
+            if (batch.isEmpty()) {
+                // 只跳过了段文件结束标记或者损坏的记录，提交peek结束的位置，不算作写回了日志，避免写入线程空转
+                spool.commit(0);
+                return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("SysLogWriter.replay --> Failed to read sys logs from spool: ", e);
+            return false;
+        }
+        int processed = this.write(batch, replayedCounter);
+        try {
+            // 只提交已经写入或者跳过的日志，剩下的等数据库恢复后再写回
+            spool.commit(processed);
+        } catch (IOException | RuntimeException e) {
+            log.error("SysLogWriter.replay --> Failed to commit spool position: ", e);
+            return false;
+        }
+        if (processed < batch.size()) {
+            log.warn("SysLogWriter.replay --> Database is still unavailable, {} bytes of sys logs are waiting", spool.size());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 写入一批日志，数据本身有问题导致整批失败时逐条重试，只跳过有问题的日志
+     *
+     * @param batch   日志
+     * @param counter 写入成功的计数
+     * @return 已经处理（写入或者跳过）的条数，遇到数据库不可用时停止写入，此时返回值小于batch.size()
+     */
+    private int write(List<TbSysLog> batch, Counter counter) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            this.insert(batch);
+            counter.increment(batch.size());
+            return batch.size();
+        } catch (Exception e) {
+            if (e instanceof SQLException sqlException && isTransient(sqlException)) {
+                log.warn("SysLogWriter.write --> Failed to insert {} sys logs: {}", batch.size(), e.getMessage());
+                return 0;
+            }
+            if (batch.size() == 1) {
+                failedCounter.increment();
+                log.error("SysLogWriter.write --> Failed to insert sys log, skipping it: ", e);
+                return 1;
+            }
+            log.warn("SysLogWriter.write --> Failed to insert {} sys logs, retrying them one by one: {}", batch.size(), e.getMessage());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                this.insert(batch.subList(i, i + 1));
+                counter.increment();
+            } catch (Exception e) {
+                if (e instanceof SQLException sqlException && isTransient(sqlException)) {
+                    log.warn("SysLogWriter.write --> Failed to insert sys log: {}", e.getMessage());
+                    return i;
+                }
+                failedCounter.increment();
+                log.error("SysLogWriter.write --> Failed to insert sys log {}, skipping it: ", batch.get(i).getTraceId(), e);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * 使用一条多行INSERT语句写入数据库
+     *
+     * @param batch 日志
+     * @throws SQLException SQLException
+     */
+    private void insert(List<TbSysLog> batch) throws SQLException {
+        String sql = INSERT_SQL + String.join(", ", Collections.nCopies(batch.size(), VALUES_SQL));
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setQueryTimeout((int) Math.max((sysLog.getWriteTimeout().toMillis() + 999) / 1000, 1));
+            int index = 1;
+            for (TbSysLog tbSysLog : batch) {
+                index = this.bind(preparedStatement, index, tbSysLog);
+            }
+            preparedStatement.executeUpdate();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * 是否是数据库不可用（连接失败、超时等）引起的异常，只有SQLState为08（连接异常）、超时和{@link SQLTransientException}才会重试，
+     * 其他异常（例如字段太长、数据截断）都认为是数据本身有问题，重试也不会成功
+     *
+     * @param e SQLException
+     * @return boolean
+     */
+    static boolean isTransient(SQLException e) {
+        return e instanceof SQLTransientException
+                || e instanceof SQLTimeoutException
+                || StrUtil.startWith(e.getSQLState(), "08");
+    }
+
+    private int bind(PreparedStatement preparedStatement, int index, TbSysLog tbSysLog) throws SQLException {
+        preparedStatement.setString(index++, tbSysLog.getLogType());
+        preparedStatement.setObject(index++, tbSysLog.getLoginId());
+        preparedStatement.setBytes(index++, tbSysLog.getClientIp());
+        preparedStatement.setString(index++, tbSysLog.getUserAgent());
+        preparedStatement.setString(index++, tbSysLog.getHttpMethod());
+        preparedStatement.setString(index++, tbSysLog.getMethodName());
+        preparedStatement.setString(index++, tbSysLog.getRequestUrl());
+        index = this.bindPayload(preparedStatement, index, tbSysLog.getRequestHeader());
+        index = this.bindPayload(preparedStatement, index, tbSysLog.getRequestParams());
+        index = this.bindPayload(preparedStatement, index, tbSysLog.getResponseData());
+        preparedStatement.setString(index++, tbSysLog.getTraceId());
+        preparedStatement.setObject(index++, tbSysLog.getSuccessful());
+        preparedStatement.setTimestamp(index++, this.timestamp(tbSysLog.getRequestTime()));
+        preparedStatement.setObject(index++, tbSysLog.getCostTimeMillis());
+        preparedStatement.setTimestamp(index++, this.timestamp(tbSysLog.getCreateTime()));
+        preparedStatement.setTimestamp(index++, this.timestamp(tbSysLog.getUpdateTime()));
+        return index;
+    }
+
+    /**
+     * 请求头部、请求参数、响应数据，开启压缩时以二进制写入，与SysLogPayloadTypeHandler保持一致
+     *
+     * @param preparedStatement preparedStatement
+     * @param index             参数位置
+     * @param value             内容
+     * @return 下一个参数位置
+     * @throws SQLException SQLException
+     */
+    private int bindPayload(PreparedStatement preparedStatement, int index, String value) throws SQLException {
+        if (sysLog.isCompress()) {
+            preparedStatement.setBytes(index, SysLogPayloadUtil.encode(value, (int) sysLog.getCompressThreshold().toBytes()));
+        } else {
+            preparedStatement.setString(index, value);
+        }
+        return index + 1;
+    }
+
+    /**
+     * 与TakeshiInstantTypeHandler保持一致的时间精度
+     *
+     * @param instant instant
+     * @return Timestamp
+     */
+    private Timestamp timestamp(Instant instant) {
+        if (instant == null) {
+            return null;
+        }
+        Timestamp timestamp = Timestamp.from(instant);
+        timestamp.setNanos(TakeshiUtil.interceptNano(timestamp.getNanos()));
+        return timestamp;
+    }
+
+    /**
+     * 有界的多生产者单消费者无锁环形缓冲区
+     *
+     * @param <E> 元素类型
+     */
+    static final class RingBuffer<E> {
+
+        private final AtomicReferenceArray<E> buffer;
+
+        private final int mask;
+
+        private final AtomicLong producerIndex = new AtomicLong();
+
+        private final AtomicLong consumerIndex = new AtomicLong();
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            this.buffer = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        /**
+         * 放入元素，缓冲区满时返回false
+         *
+         * @param e 元素
+         * @return boolean
+         */
+        boolean offer(E e) {
+            while (true) {
+                long index = producerIndex.get();
+                if (index - consumerIndex.get() > mask) {
+                    return false;
+                }
+                if (producerIndex.compareAndSet(index, index + 1)) {
+                    buffer.lazySet((int) index & mask, e);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 取出元素，只能由一个线程调用，为空（或生产者还未写入完成）时返回NULL
+         *
+         * @return 元素
+         */
+        E poll() {
+            long index = consumerIndex.get();
+            int offset = (int) index & mask;
+            E e = buffer.get(offset);
+            if (e == null) {
+                return null;
+            }
+            buffer.lazySet(offset, null);
+            consumerIndex.lazySet(index + 1);
+            return e;
+        }
+
+        int size() {
+            return (int) Math.max(producerIndex.get() - consumerIndex.get(), 0);
+        }
+
+    }
+
+}
@@ -1,22 +1,24 @@
 package com.takeshi.component;
 
+import cn.hutool.core.util.ObjUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.db.DbUtil;
-import cn.hutool.db.Entity;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.takeshi.annotation.TakeshiLog;
+import com.takeshi.config.properties.TakeshiProperties;
 import com.takeshi.constants.TakeshiCode;
-import com.takeshi.pojo.basic.ResponseData;
 import com.takeshi.pojo.basic.TbSysLog;
 import com.takeshi.util.GsonUtil;
+import com.takeshi.util.SysLogPayloadUtil;
 import io.micrometer.tracing.Span;
 import io.micrometer.tracing.TraceContext;
 import io.micrometer.tracing.Tracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.InetAddress;
 import java.time.Instant;
 import java.util.Map;
@@ -24,21 +26,23 @@ import java.util.Optional;
 
 /**
  * TakeshiAsyncComponent
+ * <p>系统日志在请求线程中组装好后交给{@link SysLogWriter}，由其写入线程批量写入数据库，不占用请求线程和异步线程池</p>
  *
  * @author 七濑武【Nanase Takeshi】
  */
 @Slf4j
-@Async
 @Component
 @RequiredArgsConstructor
 public class TakeshiAsyncComponent {
 
-    private final DataSource dataSource;
+    private final SysLogWriter sysLogWriter;
 
     private final Tracer tracer;
 
+    private final TakeshiProperties takeshiProperties;
+
     /**
-     * 新增一条接口请求相关信息到数据库
+     * 新增一条接口请求相关信息到数据库，只放入写入缓冲区，缓冲区满时丢弃，是否成功从响应数据中读取
      *
      * @param takeshiLog       TakeshiLog注解
      * @param loginId          登录的用户ID
@@ -52,11 +56,38 @@ public class TakeshiAsyncComponent {
      * @param startTime        请求时间
      * @param totalTimeMillis  接口总耗时
      * @param responseData     接口响应数据
+     * @deprecated 使用{@link #insertSysLog(TakeshiLog, Object, String, String, Map, String, String, String, String, Instant, long, String, boolean)}
      */
+    @Deprecated
     public void insertSysLog(TakeshiLog takeshiLog, Object loginId, String clientIp, String userAgent,
                              Map<String, String> headerMap, String paramObjectValue, String httpMethod,
                              String methodName, String requestUrl, Instant startTime, long totalTimeMillis,
                              String responseData) {
+        this.insertSysLog(takeshiLog, loginId, clientIp, userAgent, headerMap, paramObjectValue, httpMethod, methodName, requestUrl,
+                startTime, totalTimeMillis, responseData, this.successful(responseData, null));
+    }
+
+    /**
+     * 新增一条接口请求相关信息到数据库，只放入写入缓冲区，缓冲区满时丢弃
+     *
+     * @param takeshiLog       TakeshiLog注解
+     * @param loginId          登录的用户ID
+     * @param clientIp         请求的IP
+     * @param userAgent        用户代理
+     * @param headerMap        请求头部
+     * @param paramObjectValue 请求的参数
+     * @param httpMethod       请求方式
+     * @param methodName       请求方法名称
+     * @param requestUrl       请求路径
+     * @param startTime        请求时间
+     * @param totalTimeMillis  接口总耗时
+     * @param responseData     接口响应数据
+     * @param successful       是否成功，参考{@link #successful(String, Integer)}
+     */
+    public void insertSysLog(TakeshiLog takeshiLog, Object loginId, String clientIp, String userAgent,
+                             Map<String, String> headerMap, String paramObjectValue, String httpMethod,
+                             String methodName, String requestUrl, Instant startTime, long totalTimeMillis,
+                             String responseData, boolean successful) {
         try {
             TbSysLog tbSysLog = new TbSysLog();
             tbSysLog.setLogType(takeshiLog.logType().name());
@@ -66,17 +97,18 @@ public class TakeshiAsyncComponent {
             tbSysLog.setHttpMethod(httpMethod);
             tbSysLog.setMethodName(methodName);
             tbSysLog.setRequestUrl(requestUrl);
-            tbSysLog.setRequestHeader(GsonUtil.toJson(headerMap));
-            tbSysLog.setRequestParams(paramObjectValue);
-            tbSysLog.setResponseData(StrUtil.emptyToNull(responseData));
+            TakeshiProperties.SysLog sysLog = takeshiProperties.getSysLog();
+            tbSysLog.setRequestHeader(SysLogPayloadUtil.truncate(GsonUtil.toJson(headerMap), (int) sysLog.getMaxRequestHeaderSize().toBytes()));
+            tbSysLog.setRequestParams(SysLogPayloadUtil.truncate(paramObjectValue, (int) sysLog.getMaxRequestParamsSize().toBytes()));
+            tbSysLog.setResponseData(SysLogPayloadUtil.truncate(StrUtil.emptyToNull(responseData), (int) sysLog.getMaxResponseDataSize().toBytes()));
             tbSysLog.setTraceId(Optional.ofNullable(tracer.currentSpan()).map(Span::context).map(TraceContext::traceId).orElse(null));
-            tbSysLog.setSuccessful(this.successful(responseData));
+            tbSysLog.setSuccessful(successful);
             tbSysLog.setRequestTime(startTime);
             tbSysLog.setCostTimeMillis(totalTimeMillis);
             Instant instant = Instant.now();
             tbSysLog.setCreateTime(instant);
             tbSysLog.setUpdateTime(instant);
-            DbUtil.use(dataSource).insert(Entity.parseWithUnderlineCase(tbSysLog));
+            sysLogWriter.offer(tbSysLog);
         } catch (Exception e) {
             log.error("TakeshiAsyncComponent.insertSysLog --> e: ", e);
         }
@@ -86,13 +118,41 @@ public class TakeshiAsyncComponent {
      * 判断返回结果是否是成功的
      *
      * @param responseData 接口响应数据
+     * @param responseCode 返回的ResponseData中的状态码，为NULL时从响应数据中读取
+     * @return boolean
+     */
+    public boolean successful(String responseData, Integer responseCode) {
+        return ObjUtil.isNotNull(responseCode) ? responseCode == TakeshiCode.SUCCESS.getCode() : this.successful(responseData);
+    }
+
+    /**
+     * 判断返回结果是否是成功的，只读取顶层的code字段，响应数据可能只是被截断后的前部分数据
+     * <p>只用于没有经过CaptureResponseBodyAdvice的响应，例如直接写入response的响应</p>
+     *
+     * @param responseData 接口响应数据
      * @return boolean
      */
     private boolean successful(String responseData) {
         if (StrUtil.isEmpty(responseData)) {
             return true;
         }
-        return GsonUtil.fromJson(responseData, ResponseData.class).getCode() == TakeshiCode.SUCCESS.getCode();
+        try (JsonReader jsonReader = new JsonReader(new StringReader(responseData))) {
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+                // 不是ResponseData对象的响应数据
+                return true;
+            }
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (StrUtil.equals("code", jsonReader.nextName())) {
+                    return jsonReader.nextInt() == TakeshiCode.SUCCESS.getCode();
+                }
+                jsonReader.skipValue();
+            }
+            return false;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // 被截断或者无法解析的响应数据，无法判断是否失败
+            return true;
+        }
     }
 
 }
@@ -1,5 +1,7 @@
 package com.takeshi.config;
 
+import cn.dev33.satoken.stp.StpLogic;
+import cn.dev33.satoken.stp.StpUtil;
 import cn.hutool.core.util.StrUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -7,8 +9,11 @@ import com.fasterxml.jackson.databind.cfg.PackageVersion;
 import com.fasterxml.jackson.databind.deser.std.NumberDeserializers;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.takeshi.config.satoken.TakeshiActiveRenewal;
 import com.takeshi.config.satoken.TakeshiInterceptor;
 import com.takeshi.config.satoken.TakeshiSaTokenConfig;
+import com.takeshi.config.satoken.TakeshiStpLogic;
+import com.takeshi.config.satoken.TakeshiTokenCache;
 import lombok.RequiredArgsConstructor;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
@@ -160,6 +165,19 @@ public class TakeshiConfig {
         return TakeshiInterceptor::newInstance;
     }
 
+    /**
+     * 带有token本地缓存的StpLogic，Sa-Token会自动注入到StpUtil中
+     *
+     * @param takeshiTokenCache    takeshiTokenCache
+     * @param takeshiActiveRenewal takeshiActiveRenewal
+     * @return StpLogic
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public StpLogic stpLogic(TakeshiTokenCache takeshiTokenCache, TakeshiActiveRenewal takeshiActiveRenewal) {
+        return new TakeshiStpLogic(StpUtil.TYPE, takeshiTokenCache, takeshiActiveRenewal);
+    }
+
     /**
      * 配置redisson客户端，单机模式
      *
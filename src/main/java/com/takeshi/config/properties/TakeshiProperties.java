@@ -1,6 +1,10 @@
 package com.takeshi.config.properties;
 
 import com.takeshi.constants.TakeshiConstants;
+import com.takeshi.enums.LogTypeEnum;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
@@ -8,10 +12,11 @@ import org.redisson.spring.cache.CacheConfig;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
 
 /**
  * 自定义额外属性值
@@ -72,16 +77,355 @@ public class TakeshiProperties {
      */
     private boolean enableResponseDataLog = true;
 
+    /**
+     * 请求开始的日志中是否包含登录用户的SaSession数据，获取SaSession需要读取一次Redis
+     */
+    private boolean enableSessionDataLog = false;
+
+    /**
+     * 最多保留的响应数据大小，用于打印响应数据日志和保存到数据库，超出部分不会被保留，但仍会正常返回给客户端
+     */
+    private DataSize responseDataCaptureSize = DataSize.ofKilobytes(8);
+
+    /**
+     * 请求体超过此大小时写入临时文件并以内存映射的方式读取，不再缓存在堆内存中
+     */
+    private DataSize requestBodySpillThreshold = DataSize.ofMegabytes(1);
+
+    /**
+     * 允许的最大请求体大小（multipart/form-data请求除外），超过时返回413状态码，设置为负数则不限制
+     */
+    private DataSize requestBodyMaxSize = DataSize.ofMegabytes(50);
+
+    /**
+     * header中的request-timeout允许的最大值，超过时按此值处理；RequestPriority注解的timeoutMillis不受此限制
+     */
+    private Duration maxRequestTimeout = Duration.ofMinutes(10);
+
     /**
      * 注解{@link Cacheable}使用的redisson缓存配置，例如：使用classpath:redisson-cache-config.yml，也可以使用json文件的路径，填写内容参考：{@link CacheConfig}
      */
     private String redissonCacheConfigLocation;
 
+    /**
+     * token到登录ID的本地缓存、token续签合并配置
+     */
+    @Valid
+    private TokenCache tokenCache = new TokenCache();
+
+    /**
+     * 角色、权限的缓存配置
+     */
+    @Valid
+    private PermissionCache permissionCache = new PermissionCache();
+
+    /**
+     * 自适应并发限制配置
+     */
+    @Valid
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+    /**
+     * 系统日志（TakeshiLog注解）的批量写入配置
+     */
+    @Valid
+    private SysLog sysLog = new SysLog();
+
     /**
      * SQL 日志过滤配置，开启后可通过 MDC 标记在指定代码块内屏蔽 SQL 相关日志
      */
     private SqlLogFilter sqlLogFilter = new SqlLogFilter();
 
+    /**
+     * token到登录ID的本地缓存配置，注销、踢人下线、顶人下线时通过Redis的发布订阅通知所有节点移除
+     */
+    @Data
+    public static class TokenCache {
+
+        /**
+         * 本地缓存的有效期，设置为0则不缓存
+         */
+        private Duration ttl = Duration.ofSeconds(5);
+
+        /**
+         * 本地最多缓存的token数量
+         */
+        @Positive
+        private int maxSize = 100_000;
+
+        /**
+         * 开启sa-token.active-timeout时，每个token在此时间窗口内最多立即续签一次，其余续签合并到窗口结束后写入，设置为0则每次请求都写入
+         */
+        private Duration activeRenewalWindow = Duration.ofSeconds(30);
+
+    }
+
+    /**
+     * 角色、权限的缓存配置，开启后StpInterface的结果会缓存在本地和Redis中，
+     * 角色或权限变更后需要调用TakeshiPermissionCache的invalidate方法
+     */
+    @Data
+    public static class PermissionCache {
+
+        /**
+         * 是否开启，默认不开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地缓存的有效期
+         */
+        private Duration localTtl = Duration.ofSeconds(30);
+
+        /**
+         * Redis缓存的有效期
+         */
+        private Duration redisTtl = Duration.ofMinutes(10);
+
+        /**
+         * 本地最多缓存的登录ID数量
+         */
+        @Positive
+        private int maxSize = 10_000;
+
+    }
+
+    /**
+     * 自适应并发限制配置，每个分组（RequestPriority注解的group，默认Controller）独立计算并发上限（AIMD）：
+     * 请求耗时超过maxLatency时按backoffRatio降低上限，正常且并发接近上限时上限加1，超过上限的请求直接拒绝
+     */
+    @Data
+    public static class ConcurrencyLimit {
+
+        /**
+         * 是否开启，默认不开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 初始并发上限
+         */
+        @Positive
+        private int initialLimit = 100;
+
+        /**
+         * 最小并发上限
+         */
+        @Positive
+        private int minLimit = 10;
+
+        /**
+         * 最大并发上限，高优先级的请求也不能超过此值
+         */
+        @Positive
+        private int maxLimit = 1000;
+
+        /**
+         * 请求耗时超过此值时视为过载
+         */
+        private Duration maxLatency = Duration.ofSeconds(2);
+
+        /**
+         * 过载时并发上限的缩小比例
+         */
+        @DecimalMin("0.5")
+        @DecimalMax("0.99")
+        private double backoffRatio = 0.9;
+
+        /**
+         * 低优先级的请求只能使用并发上限的此比例
+         */
+        @DecimalMin("0.1")
+        @DecimalMax("1.0")
+        private double lowPriorityRatio = 0.75;
+
+        /**
+         * 高优先级的请求最多可以使用并发上限的此比例，保证过载时高优先级的请求仍然有余量，同时不会无限制地涌入
+         */
+        @DecimalMin("1.0")
+        @DecimalMax("10.0")
+        private double highPriorityRatio = 1.5;
+
+    }
+
+    /**
+     * 系统日志的批量写入配置，接口请求只把日志放入缓冲区，由单独的线程批量写入数据库
+     */
+    @Data
+    public static class SysLog {
+
+        /**
+         * 缓冲区大小，会向上取整为2的幂，缓冲区满时新的日志会被丢弃
+         */
+        @Positive
+        private int bufferSize = 8192;
+
+        /**
+         * 每次最多写入的条数
+         */
+        @Positive
+        private int batchSize = 100;
+
+        /**
+         * 缓冲区中有日志时，最多间隔多久写入一次
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * 缓冲区满时接口请求最多等待的时间，默认不等待直接丢弃
+         */
+        private Duration offerTimeout = Duration.ZERO;
+
+        /**
+         * 应用关闭时最多等待多久写入缓冲区中剩余的日志
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+        /**
+         * 每次批量写入数据库的超时时间，超时视为数据库不可用
+         */
+        private Duration writeTimeout = Duration.ofSeconds(5);
+
+        /**
+         * 请求头部最多保存的大小，超过后截断并保存为{"truncated":true,"totalBytes":N,"prefix":"..."}，为0时不截断
+         */
+        private DataSize maxRequestHeaderSize = DataSize.ofKilobytes(8);
+
+        /**
+         * 请求参数最多保存的大小，超过后截断并保存为{"truncated":true,"totalBytes":N,"prefix":"..."}，为0时不截断
+         */
+        private DataSize maxRequestParamsSize = DataSize.ofKilobytes(64);
+
+        /**
+         * 响应数据最多保存的大小，超过后截断并保存为{"truncated":true,"totalBytes":N,"prefix":"..."}，为0时不截断
+         */
+        private DataSize maxResponseDataSize = DataSize.ofKilobytes(64);
+
+        /**
+         * 是否压缩请求头部、请求参数、响应数据，默认不压缩
+         * <p>开启后这三列以二进制写入，数据库中的列需要改为VARBINARY、BLOB类型，使用SysLogPayloadTypeHandler读取</p>
+         */
+        private boolean compress = false;
+
+        /**
+         * 超过此大小时才压缩
+         */
+        private DataSize compressThreshold = DataSize.ofKilobytes(1);
+
+        /**
+         * 采样配置
+         */
+        @Valid
+        private Sampling sampling = new Sampling();
+
+        /**
+         * 按分钟预聚合的接口统计配置
+         */
+        @Valid
+        private Rollup rollup = new Rollup();
+
+        /**
+         * 数据库不可用时的本地磁盘缓冲配置
+         */
+        @Valid
+        private Spool spool = new Spool();
+
+    }
+
+    /**
+     * 系统日志的本地磁盘缓冲配置，开启后写入数据库失败的日志会追加到本地文件，数据库恢复后再按顺序写回数据库
+     */
+    @Data
+    public static class Spool {
+
+        /**
+         * 是否开启，默认不开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地缓冲目录，默认为 ${java.io.tmpdir}/takeshi/sys-log-spool，多个应用实例不能使用同一个目录
+         */
+        private String directory;
+
+        /**
+         * 每个段文件的大小
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 最多占用的磁盘空间，超过后写入数据库失败的日志会被丢弃
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+
+        /**
+         * 写回数据库失败后，间隔多久再重试
+         */
+        private Duration replayInterval = Duration.ofSeconds(5);
+
+    }
+
+    /**
+     * 按分钟预聚合的接口统计配置，开启后每分钟按接口统计请求数、失败数和耗时分布，批量写入tb_sys_log_rollup表
+     */
+    @Data
+    public static class Rollup {
+
+        /**
+         * 是否开启，默认不开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 耗时分布可以统计的最大耗时，超过的按此值统计
+         */
+        private Duration maxLatency = Duration.ofHours(1);
+
+    }
+
+    /**
+     * 系统日志的采样配置，在请求结束后根据结果决定是否记录
+     * <p>失败的请求、耗时超过slowThreshold的请求、alwaysKeepLogTypes中的日志类型总是记录，其余的按采样率记录，
+     * 采样率的优先级：endpointRates > logTypeRates > rate</p>
+     */
+    @Data
+    public static class Sampling {
+
+        /**
+         * 是否开启，默认不开启，所有日志都记录
+         */
+        private boolean enabled = false;
+
+        /**
+         * 默认的采样率，0~1
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double rate = 1.0;
+
+        /**
+         * 耗时超过此值的请求总是记录
+         */
+        private Duration slowThreshold = Duration.ofSeconds(1);
+
+        /**
+         * 总是记录的日志类型
+         */
+        private Set<LogTypeEnum> alwaysKeepLogTypes = EnumSet.of(LogTypeEnum.INSERT, LogTypeEnum.UPDATE, LogTypeEnum.DELETE, LogTypeEnum.PAY, LogTypeEnum.LOGIN);
+
+        /**
+         * 按日志类型配置的采样率，例如：SELECT: 0.1
+         */
+        private Map<LogTypeEnum, Double> logTypeRates = new EnumMap<>(LogTypeEnum.class);
+
+        /**
+         * 按接口配置的采样率，key为完整的方法名（com.example.UserController.list）或者Controller的完整类名（com.example.UserController）
+         * <p>key中含有“.”，配置时需要使用“[com.example.UserController.list]: 0.1”的形式</p>
+         */
+        private Map<String, Double> endpointRates = new HashMap<>();
+
+    }
+
     /**
      * SQL 日志过滤配置
      *
@@ -0,0 +1,151 @@
+package com.takeshi.config.satoken;
+
+import cn.hutool.core.util.HexUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.SneakyThrows;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * 重复提交的请求指纹
+ * <p>按字段名排序后直接遍历请求参数的JsonNode，将每个值写入复用的摘要中，不会生成中间的JSON字符串；
+ * 每个值前都带有类型标记和长度，保证不同结构的参数不会得到相同的输入</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class RepeatSubmitFingerprint {
+
+    private static final ThreadLocal<RepeatSubmitFingerprint> THREAD_LOCAL = ThreadLocal.withInitial(RepeatSubmitFingerprint::new);
+
+    private static final int BUFFER_SIZE = 512;
+
+    private final MessageDigest messageDigest;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    @SneakyThrows
+    private RepeatSubmitFingerprint() {
+        this.messageDigest = MessageDigest.getInstance("MD5");
+    }
+
+    /**
+     * 计算请求指纹
+     *
+     * @param clientIp          客户端IP
+     * @param httpMethod        接口方法类型
+     * @param servletPath       接口路径
+     * @param loginId           登陆用户ID
+     * @param params            所有请求参数
+     * @param exclusionFieldSet 不参与计算的字段名称（任意层级）
+     * @return 16进制的摘要
+     */
+    public static String fingerprint(String clientIp, String httpMethod, String servletPath, Object loginId,
+                                     JsonNode params, Set<String> exclusionFieldSet) {
+        RepeatSubmitFingerprint fingerprint = THREAD_LOCAL.get();
+        try {
+            fingerprint.string(clientIp);
+            fingerprint.string(httpMethod);
+            fingerprint.string(servletPath);
+            fingerprint.string(loginId == null ? null : loginId.toString());
+            fingerprint.node(params, exclusionFieldSet);
+            fingerprint.flush();
+            return HexUtil.encodeHexStr(fingerprint.messageDigest.digest());
+        } finally {
+            fingerprint.position = 0;
+            fingerprint.messageDigest.reset();
+        }
+    }
+
+    private void node(JsonNode node, Set<String> exclusionFieldSet) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            this.tag('z');
+        } else if (node.isObject()) {
+            String[] fieldNames = new String[node.size()];
+            int size = 0;
+            Iterator<String> iterator = node.fieldNames();
+            while (iterator.hasNext()) {
+                String fieldName = iterator.next();
+                if (!exclusionFieldSet.contains(fieldName)) {
+                    fieldNames[size++] = fieldName;
+                }
+            }
+            Arrays.sort(fieldNames, 0, size);
+            this.tag('o');
+            this.integer(size);
+            for (int i = 0; i < size; i++) {
+                this.string(fieldNames[i]);
+                this.node(node.get(fieldNames[i]), exclusionFieldSet);
+            }
+        } else if (node.isArray()) {
+            this.tag('a');
+            this.integer(node.size());
+            for (JsonNode item : node) {
+                this.node(item, exclusionFieldSet);
+            }
+        } else if (node.isBoolean()) {
+            this.tag(node.booleanValue() ? 't' : 'f');
+        } else if (node.canConvertToExactIntegral() && node.canConvertToLong()) {
+            this.tag('l');
+            this.longValue(node.longValue());
+        } else if (node.isNumber()) {
+            // 小数或者超出long范围的整数，去掉末尾的0，使1.50和1.5得到相同的结果
+            BigDecimal decimal = node.decimalValue().stripTrailingZeros();
+            this.tag('d');
+            this.integer(decimal.scale());
+            this.string(decimal.unscaledValue().toString());
+        } else {
+            this.string(node.asText());
+        }
+    }
+
+    private void string(String value) {
+        if (value == null) {
+            this.tag('z');
+            return;
+        }
+        this.tag('s');
+        this.integer(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            this.ensure(2);
+            buffer[position++] = (byte) (c >>> 8);
+            buffer[position++] = (byte) c;
+        }
+    }
+
+    private void tag(char tag) {
+        this.ensure(1);
+        buffer[position++] = (byte) tag;
+    }
+
+    private void integer(int value) {
+        this.ensure(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void longValue(long value) {
+        this.integer((int) (value >>> 32));
+        this.integer((int) value);
+    }
+
+    private void ensure(int length) {
+        if (position + length > BUFFER_SIZE) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        messageDigest.update(buffer, 0, position);
+        position = 0;
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.listener.SaTokenEventCenter;
+import cn.dev33.satoken.listener.SaTokenListenerForSimple;
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 合并token最后活跃时间的续签写入，由{@link TakeshiStpLogic}使用
+ * <p>每个token在一个时间窗口（takeshi.token-cache.active-renewal-window）内只立即写入第一次续签，
+ * 窗口内的其余续签只在本地标记，窗口结束后由定时任务补写一次；频繁调用接口的token每个窗口最多写入两次Redis</p>
+ * <p>Redis中的最后活跃时间最多比实际晚一个窗口，窗口应远小于sa-token.active-timeout；
+ * 注销、踢人下线、顶人下线时丢弃未写入的续签，不会为已失效的token补写</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TakeshiActiveRenewal implements SmartInitializingSingleton {
+
+    private final TakeshiProperties takeshiProperties;
+
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * key：token，value：当前窗口
+     */
+    private final Map<String, Window> windowMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!this.isEnabled()) {
+            return;
+        }
+        long period = Math.max(takeshiProperties.getTokenCache().getActiveRenewalWindow().toMillis() / 2, 1);
+        scheduledExecutorService.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+        SaTokenEventCenter.registerListener(new SaTokenListenerForSimple() {
+            @Override
+            public void doLogout(String loginType, Object loginId, String tokenValue) {
+                TakeshiActiveRenewal.this.forget(tokenValue);
+            }
+
+            @Override
+            public void doKickout(String loginType, Object loginId, String tokenValue) {
+                TakeshiActiveRenewal.this.forget(tokenValue);
+            }
+
+            @Override
+            public void doReplaced(String loginType, Object loginId, String tokenValue) {
+                TakeshiActiveRenewal.this.forget(tokenValue);
+            }
+        });
+    }
+
+    /**
+     * 是否开启了续签合并
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return takeshiProperties.getTokenCache().getActiveRenewalWindow().toMillis() > 0;
+    }
+
+    /**
+     * 续签token，窗口内的第一次续签立即写入，其余的合并到窗口结束后写入
+     *
+     * @param tokenValue token
+     * @param writer     实际写入最后活跃时间的函数
+     */
+    public void renew(String tokenValue, Consumer<String> writer) {
+        if (!this.isEnabled() || ObjUtil.isNull(tokenValue)) {
+            writer.accept(tokenValue);
+            return;
+        }
+        long now = System.nanoTime();
+        long windowNanos = takeshiProperties.getTokenCache().getActiveRenewalWindow().toNanos();
+        Window window = windowMap.get(tokenValue);
+        if (ObjUtil.isNotNull(window) && now - window.startNanos < windowNanos) {
+            window.dirty = true;
+            return;
+        }
+        windowMap.put(tokenValue, new Window(now, writer));
+        writer.accept(tokenValue);
+    }
+
+    /**
+     * 丢弃token未写入的续签
+     *
+     * @param tokenValue token
+     */
+    public void forget(String tokenValue) {
+        if (ObjUtil.isNotNull(tokenValue)) {
+            windowMap.remove(tokenValue);
+        }
+    }
+
+    /**
+     * 写入已结束窗口中被合并的续签，并移除没有续签的窗口
+     */
+    private void flush() {
+        long now = System.nanoTime();
+        long windowNanos = takeshiProperties.getTokenCache().getActiveRenewalWindow().toNanos();
+        int flushed = 0;
+        for (Map.Entry<String, Window> entry : windowMap.entrySet()) {
+            Window window = entry.getValue();
+            if (now - window.startNanos < windowNanos) {
+                continue;
+            }
+            if (!window.dirty) {
+                windowMap.remove(entry.getKey(), window);
+                continue;
+            }
+            // 开始一个新的窗口，窗口内的续签继续合并；token已被注销时不再写入
+            if (!windowMap.replace(entry.getKey(), window, new Window(now, window.writer))) {
+                continue;
+            }
+            try {
+                window.writer.accept(entry.getKey());
+                flushed++;
+            } catch (Exception e) {
+                log.error("TakeshiActiveRenewal.flush --> Failed to renew token: ", e);
+            }
+        }
+        if (flushed > 0) {
+            log.debug("TakeshiActiveRenewal.flush --> {} tokens renewed", flushed);
+        }
+    }
+
+    /**
+     * 续签窗口
+     */
+    private static final class Window {
+
+        private final long startNanos;
+
+        private final Consumer<String> writer;
+
+        /**
+         * 窗口内是否有未写入的续签
+         */
+        private volatile boolean dirty;
+
+        private Window(long startNanos, Consumer<String> writer) {
+            this.startNanos = startNanos;
+            this.writer = writer;
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.takeshi.config.satoken;
+
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.annotation.RepeatSubmit;
+import com.takeshi.annotation.RequestPriority;
+import com.takeshi.annotation.SystemSecurity;
+import com.takeshi.annotation.TakeshiLog;
+import com.takeshi.enums.RequestPriorityEnum;
+import lombok.Getter;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 接口方法的安全校验和日志配置，启动时根据HandlerMethod预先解析好，请求时不再重复反射获取注解
+ * <p>对象不可变，可以在多个线程之间共享</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Getter
+public final class TakeshiHandlerDescriptor {
+
+    /**
+     * 排除敏感属性字段
+     */
+    private static final String[] EXCLUSION_FIELD_NAME = {"password", "oldPassword", "newPassword", "confirmPassword"};
+
+    /**
+     * Controller的类型
+     */
+    private final Class<?> beanType;
+
+    /**
+     * 接口方法
+     */
+    private final Method method;
+
+    /**
+     * 带包名类名的完整的方法名
+     */
+    private final String methodName;
+
+    /**
+     * 方法上的TakeshiLog注解
+     */
+    @Nullable
+    private final TakeshiLog takeshiLog;
+
+    /**
+     * 方法或类上的SystemSecurity注解，方法上的优先
+     */
+    @Nullable
+    private final SystemSecurity systemSecurity;
+
+    /**
+     * 方法上的RepeatSubmit注解
+     */
+    @Nullable
+    private final RepeatSubmit repeatSubmit;
+
+    /**
+     * 接口的优先级，方法上的RequestPriority注解优先，没有时为普通优先级
+     */
+    private final RequestPriorityEnum requestPriority;
+
+    /**
+     * 并发限制分组，没有指定时使用Controller的类名
+     */
+    private final String limitGroup;
+
+    /**
+     * 请求超时时间，单位：毫秒，0表示不限制
+     */
+    private final long timeoutMillis;
+
+    /**
+     * 不参与重复提交校验的字段名称
+     */
+    private final Set<String> repeatSubmitExclusionFieldSet;
+
+    /**
+     * 保存到数据库时需要排除的字段名称，包含默认的敏感字段，不允许修改
+     */
+    private final String[] logExclusionFieldNames;
+
+    /**
+     * 放弃校验token
+     */
+    private final boolean passToken;
+
+    /**
+     * 放弃校验APP端调用接口的平台
+     */
+    private final boolean passPlatform;
+
+    /**
+     * 放弃校验参数签名
+     */
+    private final boolean passSignature;
+
+    /**
+     * 放弃校验客户端时间戳
+     */
+    private final boolean passTimestamp;
+
+    /**
+     * 入参是否解密
+     */
+    private final boolean inDecode;
+
+    /**
+     * 出参是否加密
+     */
+    private final boolean outEncode;
+
+    /**
+     * 构造函数
+     *
+     * @param beanType Controller的类型
+     * @param method   接口方法
+     */
+    public TakeshiHandlerDescriptor(Class<?> beanType, Method method) {
+        this.beanType = beanType;
+        this.method = method;
+        this.methodName = StrUtil.builder(method.getDeclaringClass().getName(), StrUtil.DOT, method.getName()).toString();
+        this.takeshiLog = method.getAnnotation(TakeshiLog.class);
+        SystemSecurity methodSecurity = AnnotatedElementUtils.findMergedAnnotation(method, SystemSecurity.class);
+        this.systemSecurity = ObjUtil.isNotNull(methodSecurity) ? methodSecurity : AnnotatedElementUtils.findMergedAnnotation(beanType, SystemSecurity.class);
+        this.repeatSubmit = AnnotatedElementUtils.findMergedAnnotation(method, RepeatSubmit.class);
+        RequestPriority methodPriority = AnnotatedElementUtils.findMergedAnnotation(method, RequestPriority.class);
+        RequestPriority priority = ObjUtil.isNotNull(methodPriority) ? methodPriority : AnnotatedElementUtils.findMergedAnnotation(beanType, RequestPriority.class);
+        this.requestPriority = ObjUtil.isNull(priority) ? RequestPriorityEnum.NORMAL : priority.value();
+        this.limitGroup = ObjUtil.isNull(priority) || StrUtil.isBlank(priority.group()) ? beanType.getName() : priority.group();
+        this.timeoutMillis = ObjUtil.isNull(priority) ? 0 : Math.max(priority.timeoutMillis(), 0);
+        this.repeatSubmitExclusionFieldSet = ObjUtil.isNull(this.repeatSubmit) ? Set.of() : Set.copyOf(Arrays.asList(this.repeatSubmit.exclusionFieldName()));
+        this.logExclusionFieldNames = ObjUtil.isNull(this.takeshiLog) ? EXCLUSION_FIELD_NAME : ArrayUtil.addAll(EXCLUSION_FIELD_NAME, this.takeshiLog.exclusionFieldName());
+        if (ObjUtil.isNotNull(this.systemSecurity)) {
+            this.passToken = this.systemSecurity.passAll() || this.systemSecurity.passToken();
+            this.passPlatform = this.systemSecurity.passAll() || this.systemSecurity.passPlatform();
+            this.passSignature = this.systemSecurity.passAll() || this.systemSecurity.passSignature();
+            this.passTimestamp = this.systemSecurity.passAll() || this.systemSecurity.passTimestamp();
+            this.inDecode = this.systemSecurity.inDecode();
+            this.outEncode = this.systemSecurity.outEncode();
+        } else {
+            this.passToken = false;
+            this.passPlatform = false;
+            this.passSignature = false;
+            this.passTimestamp = true;
+            this.inDecode = false;
+            this.outEncode = false;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.takeshi.config.satoken;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 接口方法描述缓存，启动时从RequestMappingHandlerMapping中预先解析所有接口方法，
+ * TakeshiInterceptor、DecodeRequestBodyAdvice、EncodeResponseBodyAdvice通过它获取接口的注解配置
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TakeshiHandlerDescriptorRegistry implements SmartInitializingSingleton {
+
+    private final ObjectProvider<RequestMappingHandlerMapping> requestMappingHandlerMappings;
+
+    /**
+     * 以方法为key的描述，绝大多数接口方法只属于一个Controller
+     */
+    private final Map<Method, TakeshiHandlerDescriptor> descriptorMap = new ConcurrentHashMap<>(256);
+
+    /**
+     * 父类中的接口方法被多个Controller继承时，其它Controller的描述
+     */
+    private final Map<HandlerKey, TakeshiHandlerDescriptor> inheritedDescriptorMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        requestMappingHandlerMappings.orderedStream()
+                                     .flatMap(handlerMapping -> handlerMapping.getHandlerMethods().values().stream())
+                                     .forEach(handlerMethod -> this.get(handlerMethod.getBeanType(), handlerMethod.getMethod()));
+        log.info("TakeshiHandlerDescriptorRegistry.afterSingletonsInstantiated --> {} handler methods resolved", descriptorMap.size() + inheritedDescriptorMap.size());
+    }
+
+    /**
+     * 获取接口方法的描述
+     *
+     * @param handlerMethod handlerMethod
+     * @return TakeshiHandlerDescriptor
+     */
+    public TakeshiHandlerDescriptor get(HandlerMethod handlerMethod) {
+        return this.get(handlerMethod.getBeanType(), handlerMethod.getMethod());
+    }
+
+    /**
+     * 获取接口方法的描述，不存在时解析并缓存
+     *
+     * @param beanType Controller的类型
+     * @param method   接口方法
+     * @return TakeshiHandlerDescriptor
+     */
+    public TakeshiHandlerDescriptor get(Class<?> beanType, Method method) {
+        TakeshiHandlerDescriptor descriptor = descriptorMap.get(method);
+        if (ObjUtil.isNull(descriptor)) {
+            descriptor = descriptorMap.computeIfAbsent(method, key -> new TakeshiHandlerDescriptor(beanType, key));
+        }
+        if (descriptor.getBeanType() == beanType) {
+            return descriptor;
+        }
+        return inheritedDescriptorMap.computeIfAbsent(new HandlerKey(beanType, method), key -> new TakeshiHandlerDescriptor(key.beanType(), key.method()));
+    }
+
+    /**
+     * Controller类型和接口方法
+     *
+     * @param beanType Controller的类型
+     * @param method   接口方法
+     */
+    private record HandlerKey(Class<?> beanType, Method method) {
+    }
+
+}
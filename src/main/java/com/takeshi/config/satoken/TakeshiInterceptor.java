@@ -8,56 +8,38 @@ import cn.dev33.satoken.router.SaRouter;
 import cn.dev33.satoken.servlet.model.SaRequestForServlet;
 import cn.dev33.satoken.sign.SaSignUtil;
 import cn.dev33.satoken.strategy.SaAnnotationStrategy;
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.io.unit.DataSizeUtil;
-import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.ObjUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.crypto.SecureUtil;
-import cn.hutool.extra.servlet.JakartaServletUtil;
 import cn.hutool.extra.spring.SpringUtil;
-import cn.hutool.http.ContentType;
 import cn.hutool.http.Header;
-import cn.hutool.http.useragent.UserAgentUtil;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.takeshi.annotation.RepeatSubmit;
-import com.takeshi.annotation.SystemSecurity;
-import com.takeshi.annotation.TakeshiLog;
+import com.takeshi.component.ConcurrencyLimitComponent;
+import com.takeshi.component.IpBlacklistComponent;
+import com.takeshi.component.IpRateLimitComponent;
 import com.takeshi.config.properties.TakeshiProperties;
-import com.takeshi.config.security.CachedBodyHttpServletRequest;
+import com.takeshi.config.security.TakeshiExcludeUrlMatcher;
+import com.takeshi.config.security.TakeshiRequestContext;
+import com.takeshi.config.security.TakeshiRequestParams;
 import com.takeshi.constants.RequestConstants;
 import com.takeshi.constants.TakeshiCode;
 import com.takeshi.enums.TakeshiRedisKeyEnum;
 import com.takeshi.pojo.basic.ResponseData;
-import com.takeshi.pojo.bo.IpBlackInfoBO;
-import com.takeshi.pojo.bo.RetBO;
-import com.takeshi.util.GsonUtil;
+import com.takeshi.util.DeadlineUtil;
+import com.takeshi.util.TakeshiUserAgentUtil;
 import jakarta.annotation.Nullable;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RRateLimiter;
-import org.redisson.api.RateType;
 import org.redisson.api.RedissonClient;
-import org.springframework.util.MultiValueMap;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.util.function.SingletonSupplier;
 import org.springframework.web.method.HandlerMethod;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.servlet.AsyncHandlerInterceptor;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.lang.reflect.Method;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * TakeshiInterceptor
@@ -67,8 +49,6 @@ import java.util.stream.Stream;
 @Slf4j
 public class TakeshiInterceptor implements HandlerInterceptor {
 
-    private final Duration DURATION = Duration.ofDays(7);
-
     /**
      * 认证函数：每次请求执行
      * <p> 参数：路由处理函数指针
@@ -112,9 +92,23 @@ public class TakeshiInterceptor implements HandlerInterceptor {
     }
 
     /**
-     * 排除敏感属性字段
+     * 第一次请求时才从Spring容器中获取，之后复用
      */
-    private final String[] EXCLUSION_FIELD_NAME = {"password", "oldPassword", "newPassword", "confirmPassword"};
+    private final SingletonSupplier<ObjectMapper> objectMapperSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(ObjectMapper.class));
+
+    private final SingletonSupplier<TakeshiProperties> takeshiPropertiesSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(TakeshiProperties.class));
+
+    private final SingletonSupplier<RedissonClient> redissonClientSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(RedissonClient.class));
+
+    private final SingletonSupplier<TakeshiHandlerDescriptorRegistry> descriptorRegistrySupplier = SingletonSupplier.of(() -> SpringUtil.getBean(TakeshiHandlerDescriptorRegistry.class));
+
+    private final SingletonSupplier<IpBlacklistComponent> ipBlacklistComponentSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(IpBlacklistComponent.class));
+
+    private final SingletonSupplier<IpRateLimitComponent> ipRateLimitComponentSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(IpRateLimitComponent.class));
+
+    private final SingletonSupplier<ConcurrencyLimitComponent> concurrencyLimitComponentSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(ConcurrencyLimitComponent.class));
+
+    private final SingletonSupplier<TakeshiExcludeUrlMatcher> excludeUrlMatcherSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(TakeshiExcludeUrlMatcher.class));
 
     /**
      * Interception point before the execution of a handler. Called after
@@ -139,147 +133,123 @@ public class TakeshiInterceptor implements HandlerInterceptor {
      */
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        if (handler instanceof HandlerMethod handlerMethod) {
-            Method method = handlerMethod.getMethod();
-            String methodName = StrUtil.builder(method.getDeclaringClass().getName(), StrUtil.DOT, method.getName()).toString();
-            request.setAttribute(RequestConstants.METHOD_NAME, methodName);
-            TakeshiLog takeshiLog = method.getAnnotation(TakeshiLog.class);
-            log.info("TakeshiInterceptor.preHandle --> Request Http Method: {}", StrUtil.builder(StrUtil.BRACKET_START, request.getMethod(), StrUtil.BRACKET_END, methodName));
-            ObjectMapper objectMapper = SpringUtil.getBean(ObjectMapper.class);
-            Map<String, String> urlParam = JakartaServletUtil.getParamMap(request);
-            Object fileParam = null;
-            JsonNode bodyParam = null;
-            if (request instanceof MultipartHttpServletRequest multipartRequest) {
-                // multipart/form-data方式上传的文件
-                MultiValueMap<String, MultipartFile> multiFileMap = multipartRequest.getMultiFileMap();
-                fileParam = multiFileMap.entrySet()
-                                        .stream()
-                                        .collect(Collectors.toMap(
-                                                         Map.Entry::getKey,
-                                                         entry -> entry.getValue()
-                                                                       .stream()
-                                                                       .map(multipartFile -> StrUtil.builder(multipartFile.getOriginalFilename(), StrUtil.BRACKET_START, DataSizeUtil.format(multipartFile.getSize()), StrUtil.BRACKET_END))
-                                                                       .collect(Collectors.joining(StrUtil.COMMA))
-                                                 )
-                                        );
-            } else if (StrUtil.startWithIgnoreCase(request.getContentType(), ContentType.OCTET_STREAM.toString())) {
-                // application/octet-stream方式上传的文件
-                fileParam = DataSizeUtil.format(request.getContentLength());
-            } else if (request instanceof CachedBodyHttpServletRequest cachedBodyHttpServletRequest
-                    && cachedBodyHttpServletRequest.getInputStream().read() != -1) {
-                bodyParam = objectMapper.readTree(cachedBodyHttpServletRequest.getInputStream());
-            }
-            ObjectNode paramObjectNode = objectMapper.createObjectNode();
-            if (StrUtil.isNotBlank(request.getContentType())) {
-                paramObjectNode.put("contentType", request.getContentType());
-            }
-            if (CollUtil.isNotEmpty(urlParam)) {
-                paramObjectNode.putPOJO("urlParam", urlParam);
-            }
-            if (ObjUtil.isNotNull(fileParam)) {
-                paramObjectNode.putPOJO("fileParam", fileParam);
-            }
-            if (ObjUtil.isNotNull(bodyParam)) {
-                paramObjectNode.set("bodyParam", bodyParam);
-            }
-            String paramObjectValue = objectMapper.writeValueAsString(paramObjectNode);
-            TakeshiProperties takeshiProperties = SpringUtil.getBean(TakeshiProperties.class);
-            if (takeshiProperties.isEnableRequestParamLog()) {
-                log.info("Request Parameters: {}", paramObjectValue);
-            }
-            if (ObjUtil.isNotNull(takeshiLog)) {
-                String[] exclusionFieldName = Stream.of(EXCLUSION_FIELD_NAME, takeshiLog.exclusionFieldName()).flatMap(Arrays::stream).toArray(String[]::new);
-                for (String fieldName : exclusionFieldName) {
-                    paramObjectNode.findParents(fieldName).forEach(item -> ((ObjectNode) item).remove(fieldName));
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // 异步请求（CompletableFuture、DeferredResult、Callable）完成后的再次分派，校验已经在首次分派时完成
+            return true;
+        }
+        // 排除的URL与TakeshiFilter共用同一个匹配器
+        if (handler instanceof HandlerMethod handlerMethod && !excludeUrlMatcherSupplier.obtain().matches(request.getServletPath())) {
+            TakeshiHandlerDescriptor descriptor = descriptorRegistrySupplier.obtain().get(handlerMethod);
+            // 请求上下文在TakeshiFilter中创建，客户端IP、登录ID、请求参数等只计算一次
+            TakeshiRequestContext requestContext = TakeshiRequestContext.get(request, objectMapperSupplier.obtain());
+            requestContext.setDescriptor(descriptor);
+            ConcurrencyLimitComponent concurrencyLimitComponent = concurrencyLimitComponentSupplier.obtain();
+            if (concurrencyLimitComponent.isEnabled()) {
+                // 自适应并发限制，过载时直接拒绝，不再执行后续的校验
+                ConcurrencyLimitComponent.Permit permit = concurrencyLimitComponent.tryAcquire(descriptor.getLimitGroup(), descriptor.getRequestPriority());
+                if (ObjUtil.isNull(permit)) {
+                    SaRouter.back(ResponseData.retData(TakeshiCode.OVERLOADED));
                 }
-                request.setAttribute(RequestConstants.TAKESHI_LOG, takeshiLog);
-                request.setAttribute(RequestConstants.PARAM_OBJECT_VALUE, objectMapper.writeValueAsString(paramObjectNode));
+                requestContext.setConcurrencyPermit(permit);
             }
-            // 速率限制
-            SystemSecurity systemSecurity = this.rateLimit(request, handlerMethod, objectMapper, objectMapper.readValue(paramObjectValue, ObjectNode.class), takeshiProperties);
-            if (ObjUtil.isNull(systemSecurity) || (!systemSecurity.passAll() && !systemSecurity.passToken())) {
-                // 执行token认证函数
-                auth.run(handlerMethod);
+            try {
+                log.info("TakeshiInterceptor.preHandle --> Request Http Method: [{}]{}", request.getMethod(), descriptor.getMethodName());
+                // 请求参数只解析一次，由后续的参数签名、重复提交校验共用
+                TakeshiRequestParams requestParams = requestContext.getRequestParams();
+                TakeshiProperties takeshiProperties = takeshiPropertiesSupplier.obtain();
+                if (takeshiProperties.isEnableRequestParamLog()) {
+                    log.info("Request Parameters: {}", requestParams.getParamObjectValue());
+                }
+                if (ObjUtil.isNotNull(descriptor.getTakeshiLog())) {
+                    // 系统日志记录调用接口前的登录ID
+                    requestContext.getLoginId();
+                }
+                // 速率限制
+                this.rateLimit(request, descriptor, requestContext, takeshiProperties);
+                if (!descriptor.isPassToken()) {
+                    // 执行token认证函数
+                    auth.run(handlerMethod);
+                }
+                // 注解式鉴权，对角色和权限进行验证，需要实现StpInterface接口
+                SaAnnotationStrategy.instance.checkMethodAnnotation.accept(descriptor.getMethod());
+            } catch (Exception e) {
+                // 校验不通过时不会执行afterCompletion，在这里归还并发许可
+                ConcurrencyLimitComponent.Permit permit = requestContext.getConcurrencyPermit();
+                if (ObjUtil.isNotNull(permit)) {
+                    permit.cancel();
+                }
+                throw e;
             }
-            // 注解式鉴权，对角色和权限进行验证，需要实现StpInterface接口
-            SaAnnotationStrategy.instance.checkMethodAnnotation.accept(method);
         }
         // 通过验证
         return true;
     }
 
+    /**
+     * 请求处理完成后归还并发许可，异步请求在再次分派完成后才会执行
+     *
+     * @param request  current HTTP request
+     * @param response current HTTP response
+     * @param handler  the handler that started asynchronous execution
+     * @param ex       any exception thrown on handler execution, if any
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, @Nullable Exception ex) {
+        TakeshiRequestContext requestContext = TakeshiRequestContext.getDefaultNull(request);
+        if (ObjUtil.isNotNull(requestContext) && ObjUtil.isNotNull(requestContext.getConcurrencyPermit())) {
+            requestContext.getConcurrencyPermit().release();
+        }
+    }
+
     /**
      * 速率限制
      *
      * @param request           request
-     * @param handlerMethod     handlerMethod
-     * @param objectMapper      objectMapper
-     * @param paramObjectNode   paramObjectNode
+     * @param descriptor        接口方法的描述
+     * @param requestContext    请求上下文
      * @param takeshiProperties takeshiProperties
      */
-    private SystemSecurity rateLimit(HttpServletRequest request, HandlerMethod handlerMethod, ObjectMapper objectMapper, ObjectNode paramObjectNode, TakeshiProperties takeshiProperties) throws Exception {
-        SystemSecurity systemSecurity = Optional.ofNullable(handlerMethod.getMethodAnnotation(SystemSecurity.class))
-                                                .orElse(handlerMethod.getBeanType().getAnnotation(SystemSecurity.class));
-        String clientIp = (String) request.getAttribute(RequestConstants.CLIENT_IP);
-        boolean passPlatform = false, passSignature = false, passTimestamp = true;
-        if (ObjUtil.isNotNull(systemSecurity)) {
-            passPlatform = systemSecurity.passAll() || systemSecurity.passPlatform();
-            passSignature = systemSecurity.passAll() || systemSecurity.passSignature();
-            passTimestamp = systemSecurity.passAll() || systemSecurity.passTimestamp();
-        }
-        if (takeshiProperties.isAppPlatform() && !passPlatform && !UserAgentUtil.parse(request.getHeader(Header.USER_AGENT.getValue())).isMobile()) {
+    private void rateLimit(HttpServletRequest request, TakeshiHandlerDescriptor descriptor, TakeshiRequestContext requestContext, TakeshiProperties takeshiProperties) {
+        String clientIp = requestContext.getClientIp();
+        if (takeshiProperties.isAppPlatform() && !descriptor.isPassPlatform() && !TakeshiUserAgentUtil.parse(request.getHeader(Header.USER_AGENT.getValue())).mobile()) {
             // 移动端请求工具校验
             SaRouter.back(ResponseData.retData(TakeshiCode.USERAGENT_ERROR));
         }
         // 获取方法上的RepeatSubmit注解
-        RepeatSubmit repeatSubmit = handlerMethod.getMethodAnnotation(RepeatSubmit.class);
+        RepeatSubmit repeatSubmit = descriptor.getRepeatSubmit();
         String httpMethod = request.getMethod();
         String requestURI = request.getRequestURI();
-        Object loginId = request.getAttribute(RequestConstants.LOGIN_ID);
-        String ipBlacklistKey = TakeshiRedisKeyEnum.IP_BLACKLIST.projectKey(clientIp);
-        RedissonClient redissonClient = SpringUtil.getBean(RedissonClient.class);
+        RedissonClient redissonClient = redissonClientSupplier.obtain();
         // ip速率校验
-        this.verifyIp(redissonClient, repeatSubmit, takeshiProperties.isOpenIpBlacklist(), clientIp, httpMethod, requestURI, ipBlacklistKey);
+        this.verifyIp(repeatSubmit, takeshiProperties.isOpenIpBlacklist(), clientIp, httpMethod, requestURI);
         // sign校验
-        this.verifySign(passSignature, passTimestamp, new SaRequestForServlet(request));
+        this.verifySign(descriptor.isPassSignature(), descriptor.isPassTimestamp(), new SaRequestForServlet(request));
         // 重复提交校验
-        this.verifyRepeatSubmit(redissonClient, repeatSubmit, objectMapper, clientIp, httpMethod, requestURI, loginId, paramObjectNode);
-        return systemSecurity;
+        this.verifyRepeatSubmit(redissonClient, repeatSubmit, descriptor, clientIp, httpMethod, requestURI, requestContext);
     }
 
     /**
-     * ip速率校验
+     * ip速率校验，检查黑名单、计算速率、超额时加入黑名单在一次Redis往返中完成
      *
      * @param repeatSubmit    注解
      * @param openIpBlacklist 是否开启IP黑名单
      * @param clientIp        客户端IP
      * @param httpMethod      接口方法类型
      * @param requestURI      接口路径
-     * @param ipBlacklistKey  是否开启了黑名单
      */
-    private void verifyIp(RedissonClient redissonClient, @Nullable RepeatSubmit repeatSubmit, boolean openIpBlacklist,
-                          String clientIp, String httpMethod, String requestURI, String ipBlacklistKey) {
+    private void verifyIp(@Nullable RepeatSubmit repeatSubmit, boolean openIpBlacklist,
+                          String clientIp, String httpMethod, String requestURI) {
         if (ObjUtil.isNotNull(repeatSubmit) && repeatSubmit.ipRateIntervalMillis() > 0) {
-            // 通过RepeatSubmit注解的值重新设定当前接口的IP限制速率
-            long iRate = repeatSubmit.ipRate();
-            long ipRateIntervalMillis = repeatSubmit.ipRateIntervalMillis();
-            if (openIpBlacklist && redissonClient.getBucket(ipBlacklistKey).isExists()) {
-                // 是黑名单中的IP，禁止访问
+            if (openIpBlacklist && ipBlacklistComponentSupplier.obtain().contains(clientIp)) {
+                // 本地缓存中的黑名单IP，直接拒绝，不需要访问Redis
                 SaRouter.back(ResponseData.retData(TakeshiCode.BLACK_LIST_RATE_LIMIT));
             }
-            String ipRateLimitKey = TakeshiRedisKeyEnum.IP_RATE_LIMIT.projectKey(clientIp, httpMethod, requestURI);
-            RRateLimiter ipRateLimiter = redissonClient.getRateLimiter(ipRateLimitKey);
-            // 接口IP限流
-            ipRateLimiter.trySetRate(RateType.PER_CLIENT, iRate, Duration.ofMillis(ipRateIntervalMillis), Duration.ofDays(1));
-            // 设置限流器过期时间
-            ipRateLimiter.expire(DURATION);
-            if (!ipRateLimiter.tryAcquire()) {
-                if (openIpBlacklist) {
-                    IpBlackInfoBO.IpRate ipBlackInfoIpRate = new IpBlackInfoBO.IpRate(iRate, ipRateIntervalMillis);
-                    // 超过请求次数则将IP加入黑名单内24小时
-                    IpBlackInfoBO ipBlackInfoBO = new IpBlackInfoBO(clientIp, httpMethod, requestURI, ipBlackInfoIpRate, Instant.now());
-                    redissonClient.getBucket(ipBlacklistKey).set(ipBlackInfoBO, Duration.ofHours(24));
-                }
+            // 通过RepeatSubmit注解的值设定当前接口的IP限制速率
+            long result = ipRateLimitComponentSupplier.obtain().tryAcquire(clientIp, httpMethod, requestURI, repeatSubmit.ipRate(), repeatSubmit.ipRateIntervalMillis(), openIpBlacklist);
+            if (result == IpRateLimitComponent.BLACKLISTED) {
+                // 是黑名单中的IP，禁止访问
+                SaRouter.back(ResponseData.retData(TakeshiCode.BLACK_LIST_RATE_LIMIT));
+            } else if (result == IpRateLimitComponent.LIMITED) {
                 SaRouter.back(ResponseData.retData(TakeshiCode.RATE_LIMIT));
             }
         }
@@ -303,42 +273,24 @@ public class TakeshiInterceptor implements HandlerInterceptor {
     }
 
     /**
-     * 重复提交校验
+     * 重复提交校验，使用请求指纹作为key，通过一次SET NX PX占用时间窗口
      *
-     * @param repeatSubmit    注解
-     * @param objectMapper    objectMapper
-     * @param clientIp        客户端IP
-     * @param httpMethod      接口方法类型
-     * @param servletPath     接口路径
-     * @param loginId         登陆用户ID
-     * @param paramObjectNode 请求的参数
-     * @throws JsonProcessingException JsonProcessingException
+     * @param repeatSubmit   注解
+     * @param descriptor     接口方法的描述
+     * @param clientIp       客户端IP
+     * @param httpMethod     接口方法类型
+     * @param servletPath    接口路径
+     * @param requestContext 请求上下文，包含登录用户ID和请求的参数
      */
-    private void verifyRepeatSubmit(RedissonClient redissonClient, @Nullable RepeatSubmit repeatSubmit,
-                                    ObjectMapper objectMapper, String clientIp, String httpMethod, String servletPath,
-                                    Object loginId, ObjectNode paramObjectNode) throws JsonProcessingException {
+    private void verifyRepeatSubmit(RedissonClient redissonClient, @Nullable RepeatSubmit repeatSubmit, TakeshiHandlerDescriptor descriptor,
+                                    String clientIp, String httpMethod, String servletPath,
+                                    TakeshiRequestContext requestContext) {
         if (ObjUtil.isNotNull(repeatSubmit) && repeatSubmit.rateIntervalMillis() > 0) {
-            RetBO retBO = TakeshiCode.REPEAT_SUBMIT.cloneWithMessage(repeatSubmit.msg());
-            long rateIntervalMillis = repeatSubmit.rateIntervalMillis();
-            Map<String, Object> map = new HashMap<>(8);
-            map.put("repeatIp", clientIp);
-            map.put("repeatMethod", httpMethod);
-            map.put("repeatUrl", servletPath);
-            map.put("repeatLoginId", loginId);
-            if (ArrayUtil.isNotEmpty(repeatSubmit.exclusionFieldName())) {
-                for (String fieldName : repeatSubmit.exclusionFieldName()) {
-                    paramObjectNode.findParents(fieldName).forEach(item -> ((ObjectNode) item).remove(fieldName));
-                }
-            }
-            map.put("repeatParams", objectMapper.writeValueAsString(paramObjectNode));
-            String repeatSubmitKey = TakeshiRedisKeyEnum.REPEAT_SUBMIT.projectKey(SecureUtil.md5(GsonUtil.toJson(map)));
-            RRateLimiter rateLimiter = redissonClient.getRateLimiter(repeatSubmitKey);
-            // 限制xx毫秒1次
-            rateLimiter.trySetRate(RateType.PER_CLIENT, 1, Duration.ofMillis(rateIntervalMillis), Duration.ofHours(1));
-            // 设置限流器过期时间
-            rateLimiter.expire(DURATION);
-            if (!rateLimiter.tryAcquire()) {
-                SaRouter.back(ResponseData.retData(retBO));
+            String fingerprint = RepeatSubmitFingerprint.fingerprint(clientIp, httpMethod, servletPath, requestContext.getLoginId(), requestContext.getRequestParams().getParamObjectNode(), descriptor.getRepeatSubmitExclusionFieldSet());
+            String repeatSubmitKey = TakeshiRedisKeyEnum.REPEAT_SUBMIT.projectKey(fingerprint);
+            // xx毫秒内只允许设置成功1次，最多等待到请求的截止时间
+            if (!DeadlineUtil.join(redissonClient.getBucket(repeatSubmitKey, StringCodec.INSTANCE).setIfAbsentAsync("1", Duration.ofMillis(repeatSubmit.rateIntervalMillis())))) {
+                SaRouter.back(ResponseData.retData(TakeshiCode.REPEAT_SUBMIT.cloneWithMessage(repeatSubmit.msg())));
             }
         }
     }
@@ -0,0 +1,218 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.SaManager;
+import cn.dev33.satoken.stp.StpInterface;
+import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.enums.TakeshiRedisKeyEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * 缓存StpInterface返回的角色和权限，开启takeshi.permission-cache.enabled后生效
+ * <p>启动完成后包装Sa-Token中已注册的StpInterface，查询顺序：本地缓存 → Redis → 原StpInterface（通常是数据库）</p>
+ * <p>角色或权限变更后调用{@link #invalidate(Object)}，会删除Redis中的缓存并通过发布订阅通知所有节点移除本地缓存</p>
+ * <p>指标：takeshi.permission.cache，type=role或permission，result=local、redis、miss</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+public class TakeshiPermissionCache implements SmartInitializingSingleton {
+
+    /**
+     * 通知所有节点清空本地缓存的消息
+     */
+    private static final String INVALIDATE_ALL = "*";
+
+    private final RedissonClient redissonClient;
+
+    private final TakeshiProperties.PermissionCache permissionCache;
+
+    private final CacheType roleCache;
+
+    private final CacheType permissionListCache;
+
+    private RTopic topic;
+
+    /**
+     * 构造函数
+     *
+     * @param redissonClient    redissonClient
+     * @param takeshiProperties takeshiProperties
+     * @param meterRegistry     meterRegistry
+     */
+    public TakeshiPermissionCache(RedissonClient redissonClient, TakeshiProperties takeshiProperties, MeterRegistry meterRegistry) {
+        this.redissonClient = redissonClient;
+        this.permissionCache = takeshiProperties.getPermissionCache();
+        this.roleCache = new CacheType("role", TakeshiRedisKeyEnum.ROLE_LIST, meterRegistry);
+        this.permissionListCache = new CacheType("permission", TakeshiRedisKeyEnum.PERMISSION_LIST, meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!permissionCache.isEnabled()) {
+            return;
+        }
+        StpInterface stpInterface = SaManager.getStpInterface();
+        if (ObjUtil.isNull(stpInterface) || stpInterface instanceof CachingStpInterface) {
+            return;
+        }
+        this.topic = redissonClient.getTopic(TakeshiRedisKeyEnum.PERMISSION_INVALIDATE_TOPIC.projectKey(), StringCodec.INSTANCE);
+        this.topic.addListener(String.class, (channel, message) -> this.invalidateLocal(message));
+        SaManager.setStpInterface(new CachingStpInterface(stpInterface));
+        log.info("TakeshiPermissionCache.afterSingletonsInstantiated --> {} is wrapped with permission cache", stpInterface.getClass().getName());
+    }
+
+    /**
+     * 角色或权限变更后，移除默认账号类型下此登录ID的缓存
+     *
+     * @param loginId 登录ID
+     */
+    public void invalidate(Object loginId) {
+        this.invalidate(loginId, StpUtil.TYPE);
+    }
+
+    /**
+     * 角色或权限变更后，移除此登录ID的缓存，并通知所有节点
+     *
+     * @param loginId   登录ID
+     * @param loginType 账号类型
+     */
+    public void invalidate(Object loginId, String loginType) {
+        redissonClient.getKeys().delete(TakeshiRedisKeyEnum.ROLE_LIST.projectKey(loginType, loginId), TakeshiRedisKeyEnum.PERMISSION_LIST.projectKey(loginType, loginId));
+        this.publish(this.localKey(loginId, loginType));
+    }
+
+    /**
+     * 角色定义变更后，移除所有登录ID的缓存，并通知所有节点
+     */
+    public void invalidateAll() {
+        redissonClient.getKeys().deleteByPattern(TakeshiRedisKeyEnum.ROLE_LIST.projectKey("*", "*"));
+        redissonClient.getKeys().deleteByPattern(TakeshiRedisKeyEnum.PERMISSION_LIST.projectKey("*", "*"));
+        this.publish(INVALIDATE_ALL);
+    }
+
+    private List<String> get(CacheType cacheType, Object loginId, String loginType, BiFunction<Object, String, List<String>> loader) {
+        String localKey = this.localKey(loginId, loginType);
+        long now = System.nanoTime();
+        Entry entry = cacheType.localMap.get(localKey);
+        if (ObjUtil.isNotNull(entry) && now - entry.expireAtNanos() < 0) {
+            cacheType.localCounter.increment();
+            return entry.values();
+        }
+        RBucket<List<String>> bucket = redissonClient.getBucket(cacheType.redisKey.projectKey(loginType, loginId));
+        List<String> list = bucket.get();
+        if (ObjUtil.isNotNull(list)) {
+            cacheType.redisCounter.increment();
+        } else {
+            cacheType.missCounter.increment();
+            List<String> loaded = loader.apply(loginId, loginType);
+            // 使用ArrayList保存，Redisson的Jackson编码器才能正确还原类型
+            list = ObjUtil.isNull(loaded) ? new ArrayList<>() : new ArrayList<>(loaded);
+            bucket.set(list, permissionCache.getRedisTtl());
+        }
+        List<String> values = Collections.unmodifiableList(list);
+        if (cacheType.localMap.size() >= permissionCache.getMaxSize()) {
+            cacheType.localMap.values().removeIf(item -> now - item.expireAtNanos() >= 0);
+        }
+        if (cacheType.localMap.size() < permissionCache.getMaxSize()) {
+            cacheType.localMap.put(localKey, new Entry(values, now + permissionCache.getLocalTtl().toNanos()));
+        }
+        return values;
+    }
+
+    private String localKey(Object loginId, String loginType) {
+        return StrUtil.builder(loginType, StrUtil.COLON, String.valueOf(loginId)).toString();
+    }
+
+    private void publish(String message) {
+        this.invalidateLocal(message);
+        if (ObjUtil.isNotNull(this.topic)) {
+            this.topic.publishAsync(message);
+        }
+    }
+
+    private void invalidateLocal(String message) {
+        if (INVALIDATE_ALL.equals(message)) {
+            roleCache.localMap.clear();
+            permissionListCache.localMap.clear();
+        } else {
+            roleCache.localMap.remove(message);
+            permissionListCache.localMap.remove(message);
+        }
+    }
+
+    /**
+     * 包装原StpInterface，不注册为Spring Bean，避免Sa-Token注入StpInterface时出现多个Bean
+     */
+    private final class CachingStpInterface implements StpInterface {
+
+        private final StpInterface delegate;
+
+        private CachingStpInterface(StpInterface delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<String> getPermissionList(Object loginId, String loginType) {
+            return TakeshiPermissionCache.this.get(permissionListCache, loginId, loginType, delegate::getPermissionList);
+        }
+
+        @Override
+        public List<String> getRoleList(Object loginId, String loginType) {
+            return TakeshiPermissionCache.this.get(roleCache, loginId, loginType, delegate::getRoleList);
+        }
+
+    }
+
+    /**
+     * 本地缓存的角色或权限列表
+     *
+     * @param values        不可修改的列表
+     * @param expireAtNanos 过期时间，System.nanoTime()
+     */
+    private record Entry(List<String> values, long expireAtNanos) {
+    }
+
+    /**
+     * 角色或权限的本地缓存和指标
+     */
+    private static final class CacheType {
+
+        private final Map<String, Entry> localMap = new ConcurrentHashMap<>();
+
+        private final TakeshiRedisKeyEnum redisKey;
+
+        private final Counter localCounter;
+
+        private final Counter redisCounter;
+
+        private final Counter missCounter;
+
+        private CacheType(String type, TakeshiRedisKeyEnum redisKey, MeterRegistry meterRegistry) {
+            this.redisKey = redisKey;
+            this.localCounter = Counter.builder("takeshi.permission.cache").tag("type", type).tag("result", "local").register(meterRegistry);
+            this.redisCounter = Counter.builder("takeshi.permission.cache").tag("type", type).tag("result", "redis").register(meterRegistry);
+            this.missCounter = Counter.builder("takeshi.permission.cache").tag("type", type).tag("result", "miss").register(meterRegistry);
+        }
+
+    }
+
+}
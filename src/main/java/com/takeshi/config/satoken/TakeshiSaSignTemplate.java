@@ -1,6 +1,5 @@
 package com.takeshi.config.satoken;
 
-import cn.dev33.satoken.SaManager;
 import cn.dev33.satoken.context.model.SaRequest;
 import cn.dev33.satoken.error.SaErrorCode;
 import cn.dev33.satoken.exception.SaSignException;
@@ -8,16 +7,21 @@ import cn.dev33.satoken.sign.SaSignTemplate;
 import cn.dev33.satoken.util.SaFoxUtil;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.map.MapUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.takeshi.component.NonceComponent;
 import com.takeshi.config.security.CachedBodyHttpServletRequest;
+import com.takeshi.config.security.TakeshiRequestParams;
 import com.takeshi.constants.RequestConstants;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -35,6 +39,13 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
 
     private final ObjectMapper objectMapper;
 
+    private final NonceComponent nonceComponent;
+
+    /**
+     * 第一次签名时才确定摘要算法，此时签名配置已经加载完成
+     */
+    private final SingletonSupplier<TakeshiSignDigest> signDigestSupplier = SingletonSupplier.of(() -> new TakeshiSignDigest(this::digestFullStr));
+
     /**
      * body
      */
@@ -64,6 +75,7 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
 
     /**
      * 创建签名：md5(paramsStr + keyStr)，忽略null值
+     * <p>参数值都是字符串时，按key排序后直接流式写入摘要，不再拼接待签名字符串，结果与拼接后计算的一致</p>
      *
      * @param paramsMap 参数列表
      * @return 签名
@@ -72,6 +84,12 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
     public String createSign(Map<String, ?> paramsMap) {
         String secretKey = this.getSecretKey();
         SaSignException.notEmpty(secretKey, "The secret key participating in parameter signature cannot be empty.", SaErrorCode.CODE_12201);
+        TakeshiSignDigest signDigest = signDigestSupplier.obtain();
+        if (signDigest.isSupported() && paramsMap.values().stream().allMatch(value -> value == null || value instanceof String)) {
+            String signStr = signDigest.sign(paramsMap, sign, key, secretKey);
+            log.debug("signStr：{}", signStr);
+            return signStr;
+        }
         // 如果调用者不小心传入了 sign 参数，则此处需要将 sign 参数排除在外
         if (paramsMap.containsKey(sign)) {
             // 为了保证不影响原有的 paramsMap，此处需要再复制一份
@@ -112,9 +130,24 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
         }
     }
 
+    /**
+     * 判断：随机字符串 nonce 是否有效，不会占用此 nonce
+     *
+     * @param nonce 待判断的随机字符串
+     * @return 是否有效
+     */
+    @Override
+    public boolean isValidNonce(String nonce) {
+        // 为空代表无效
+        if (SaFoxUtil.isEmpty(nonce)) {
+            return false;
+        }
+        return nonceComponent.isUnused(this.splicingNonceSaveKey(nonce), this.getNonceExpire());
+    }
+
     /**
      * 校验：随机字符串 nonce 是否有效，如果无效则抛出异常。
-     * 注意：同一 nonce 只可以被校验通过一次，校验后将保存在缓存中，再次校验将无法通过
+     * 注意：同一 nonce 只可以被校验通过一次，校验和保存通过一次 SET NX EX 原子完成，并发的相同 nonce 只有一个能通过
      *
      * @param nonce 待校验的随机字符串
      */
@@ -124,13 +157,19 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
         if (SaFoxUtil.isEmpty(nonce)) {
             throw new SaSignException("nonce Empty, invalid");
         }
-        // 校验此 nonce 是否已被使用过
-        String key = this.splicingNonceSaveKey(nonce);
-        if (SaManager.getSaTokenDao().get(key) != null) {
+        // 校验此 nonce 是否已被使用过，未使用过则保存在缓存中，保证下次校验无法通过
+        if (!nonceComponent.tryUse(this.splicingNonceSaveKey(nonce), nonce, this.getNonceExpire())) {
             throw new SaSignException("This nonce has already been used and cannot be reused.：" + nonce);
         }
-        // 校验通过后，将此 nonce 保存在缓存中，保证下次校验无法通过
-        SaManager.getSaTokenDao().set(key, nonce, this.getSignConfigOrGlobal().getSaveNonceExpire() * 2 + 2);
+    }
+
+    /**
+     * nonce 在缓存中的保存时长
+     *
+     * @return Duration
+     */
+    private Duration getNonceExpire() {
+        return Duration.ofSeconds(this.getSignConfigOrGlobal().getSaveNonceExpire() * 2 + 2);
     }
 
     /**
@@ -142,8 +181,12 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
      */
     @Override
     public boolean isValidSign(Map<String, ?> paramsMap, String sign) {
+        if (sign == null) {
+            return false;
+        }
         String theSign = this.createSign(paramsMap);
-        return theSign.equals(sign);
+        // 固定时间比较，避免通过响应时间逐位猜测签名
+        return MessageDigest.isEqual(theSign.getBytes(StandardCharsets.UTF_8), sign.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -251,14 +294,12 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
         Map<String, String> paramMap = new HashMap<>(request.getParamMap());
         if (!HttpMethod.GET.matches(request.getMethod())
                 && request.getSource() instanceof CachedBodyHttpServletRequest cachedBodyHttpServletRequest) {
-            JsonNode jsonNode = objectMapper.readTree(cachedBodyHttpServletRequest.getInputStream());
+            // 复用已解析的请求参数，不再重复解析请求体
+            TakeshiRequestParams requestParams = TakeshiRequestParams.get(cachedBodyHttpServletRequest, objectMapper);
+            JsonNode jsonNode = requestParams.getBodyNode();
             if (!jsonNode.isNull()) {
                 if (jsonNode.isObject()) {
-                    Map<String, String> map = objectMapper.convertValue(jsonNode, new TypeReference<>() {
-                    });
-                    if (CollUtil.isNotEmpty(map)) {
-                        paramMap.putAll(map);
-                    }
+                    paramMap.putAll(requestParams.getBodyParamMap());
                 } else {
                     paramMap.put(BODY, objectMapper.writeValueAsString(jsonNode));
                 }
@@ -279,11 +320,11 @@ public class TakeshiSaSignTemplate extends SaSignTemplate {
         }
         if (!HttpMethod.GET.matches(request.getMethod())
                 && request.getSource() instanceof CachedBodyHttpServletRequest cachedBodyHttpServletRequest) {
-            JsonNode jsonNode = objectMapper.readTree(cachedBodyHttpServletRequest.getInputStream());
+            TakeshiRequestParams requestParams = TakeshiRequestParams.get(cachedBodyHttpServletRequest, objectMapper);
+            JsonNode jsonNode = requestParams.getBodyNode();
             if (!jsonNode.isNull()) {
                 if (jsonNode.isObject()) {
-                    Map<String, String> map = objectMapper.convertValue(jsonNode, new TypeReference<>() {
-                    });
+                    Map<String, String> map = requestParams.getBodyParamMap();
                     if (CollUtil.isNotEmpty(map)) {
                         for (String paramName : paramNames) {
                             paramMap.put(paramName, map.get(paramName));
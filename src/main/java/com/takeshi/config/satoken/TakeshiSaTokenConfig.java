@@ -1,11 +1,7 @@
 package com.takeshi.config.satoken;
 
-import cn.hutool.core.util.ArrayUtil;
-import cn.hutool.extra.spring.SpringUtil;
-import com.takeshi.constants.TakeshiConstants;
 import com.takeshi.jackson.*;
 import org.springframework.format.FormatterRegistry;
-import org.springframework.web.servlet.config.annotation.InterceptorRegistration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -25,18 +21,14 @@ public interface TakeshiSaTokenConfig extends WebMvcConfigurer {
 
     /**
      * 注册Sa-Token的注解拦截器，打开注解式鉴权功能
+     * <p>需要排除的URL（TakeshiConstants.EXCLUDE_URL和takeshi.exclude-url）由拦截器内部通过TakeshiExcludeUrlMatcher判断</p>
      *
      * @param registry registry
      */
     @Override
     default void addInterceptors(InterceptorRegistry registry) {
         // 注册注解拦截器
-        InterceptorRegistration interceptorRegistration = registry.addInterceptor(this.saRouteBuild());
-        interceptorRegistration.addPathPatterns("/**").excludePathPatterns(TakeshiConstants.EXCLUDE_URL);
-        String[] excludeUrl = SpringUtil.getProperty("takeshi.exclude-url", String[].class, null);
-        if (ArrayUtil.isNotEmpty(excludeUrl)) {
-            interceptorRegistration.excludePathPatterns(excludeUrl);
-        }
+        registry.addInterceptor(this.saRouteBuild()).addPathPatterns("/**");
     }
 
     /**
@@ -0,0 +1,179 @@
+package com.takeshi.config.satoken;
+
+import cn.hutool.core.util.HexUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * 流式计算参数签名，结果与 {@code digestFullStr(sortJoin(paramsMap) + "&key=" + secretKey)} 完全一致
+ * <p>参数按key排序后逐个以UTF-8编码写入当前线程复用的MessageDigest，不会拼接出完整的待签名字符串</p>
+ * <p>创建时用一段包含非ASCII字符的样本与 {@code digestFullStr} 的结果比对，确定使用的摘要算法；
+ * 如果 {@code digestFullStr} 被重写成了无法识别的算法，则 {@link #isSupported()} 返回false，调用方应使用原来的方式计算</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+final class TakeshiSignDigest {
+
+    private static final String[] CANDIDATE_ALGORITHMS = {"MD5", "SHA-256", "SHA-1", "SHA-512", "SHA-384"};
+
+    private static final String SAMPLE = "a=1&b=签名&c=😀&key=secret";
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final String algorithm;
+
+    private final ThreadLocal<Digester> threadLocal;
+
+    /**
+     * 构造函数
+     *
+     * @param digestFullStr 原来的摘要函数
+     */
+    TakeshiSignDigest(UnaryOperator<String> digestFullStr) {
+        String expected = digestFullStr.apply(SAMPLE);
+        this.algorithm = Arrays.stream(CANDIDATE_ALGORITHMS)
+                               .filter(item -> HexUtil.encodeHexStr(newMessageDigest(item).digest(SAMPLE.getBytes(StandardCharsets.UTF_8))).equals(expected))
+                               .findFirst()
+                               .orElse(null);
+        if (this.algorithm == null) {
+            log.warn("TakeshiSignDigest --> Unrecognized digest algorithm, signatures will be computed by digestFullStr");
+            this.threadLocal = null;
+        } else {
+            this.threadLocal = ThreadLocal.withInitial(() -> new Digester(newMessageDigest(this.algorithm)));
+        }
+    }
+
+    /**
+     * 是否可以流式计算签名
+     *
+     * @return boolean
+     */
+    boolean isSupported() {
+        return this.algorithm != null;
+    }
+
+    /**
+     * 计算签名，忽略值为null的参数，以及key为 {@code excludeKey} 的参数
+     *
+     * @param paramsMap  参数列表，值必须是字符串
+     * @param excludeKey 不参与签名的key，即 sign
+     * @param keyName    秘钥的参数名，即 key
+     * @param secretKey  秘钥
+     * @return 16进制小写的签名
+     */
+    String sign(Map<String, ?> paramsMap, String excludeKey, String keyName, String secretKey) {
+        String[] keys = new String[paramsMap.size()];
+        int size = 0;
+        for (Map.Entry<String, ?> entry : paramsMap.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && !entry.getKey().equals(excludeKey)) {
+                keys[size++] = entry.getKey();
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        Digester digester = this.threadLocal.get();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    digester.write('&');
+                }
+                digester.write(keys[i]);
+                digester.write('=');
+                digester.write((String) paramsMap.get(keys[i]));
+            }
+            digester.write('&');
+            digester.write(keyName);
+            digester.write('=');
+            digester.write(secretKey);
+            return HexUtil.encodeHexStr(digester.digest());
+        } finally {
+            digester.reset();
+        }
+    }
+
+    private static MessageDigest newMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 当前线程复用的MessageDigest和UTF-8编码缓冲区
+     */
+    private static final class Digester {
+
+        private final MessageDigest messageDigest;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int position;
+
+        private Digester(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        /**
+         * 以UTF-8编码写入，未配对的代理字符与String.getBytes一样写入'?'
+         */
+        private void write(String value) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    this.write(c);
+                } else if (c < 0x800) {
+                    this.ensure(2);
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    this.ensure(4);
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    this.write('?');
+                } else {
+                    this.ensure(3);
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void write(char ascii) {
+            this.ensure(1);
+            buffer[position++] = (byte) ascii;
+        }
+
+        private void ensure(int length) {
+            if (position + length > BUFFER_SIZE) {
+                messageDigest.update(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private byte[] digest() {
+            messageDigest.update(buffer, 0, position);
+            position = 0;
+            return messageDigest.digest();
+        }
+
+        private void reset() {
+            position = 0;
+            messageDigest.reset();
+        }
+
+    }
+
+}
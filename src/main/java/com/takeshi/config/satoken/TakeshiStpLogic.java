@@ -0,0 +1,51 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.stp.StpLogic;
+
+/**
+ * 在Sa-Token默认的StpLogic基础上增加本地缓存，同一个token在短时间内不再重复通过DAO读取登录ID，
+ * 并合并token最后活跃时间的续签写入
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public class TakeshiStpLogic extends StpLogic {
+
+    private final TakeshiTokenCache takeshiTokenCache;
+
+    private final TakeshiActiveRenewal takeshiActiveRenewal;
+
+    /**
+     * 构造函数
+     *
+     * @param loginType            账号类型
+     * @param takeshiTokenCache    token到登录ID的本地缓存
+     * @param takeshiActiveRenewal token续签合并
+     */
+    public TakeshiStpLogic(String loginType, TakeshiTokenCache takeshiTokenCache, TakeshiActiveRenewal takeshiActiveRenewal) {
+        super(loginType);
+        this.takeshiTokenCache = takeshiTokenCache;
+        this.takeshiActiveRenewal = takeshiActiveRenewal;
+    }
+
+    /**
+     * 获取指定 token 对应的账号id (不做任何特殊处理)，优先从本地缓存获取
+     *
+     * @param tokenValue token 值
+     * @return 账号id
+     */
+    @Override
+    public Object getLoginIdNotHandle(String tokenValue) {
+        return takeshiTokenCache.get(tokenValue, super::getLoginIdNotHandle, this::isValidLoginId);
+    }
+
+    /**
+     * 续签指定 token：将这个 token 的最后活跃时间更新为当前时间戳，同一个token在时间窗口内的续签会被合并
+     *
+     * @param tokenValue 指定token
+     */
+    @Override
+    public void updateLastActiveToNow(String tokenValue) {
+        takeshiActiveRenewal.renew(tokenValue, super::updateLastActiveToNow);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.listener.SaTokenEventCenter;
+import cn.dev33.satoken.listener.SaTokenListenerForSimple;
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.enums.TakeshiRedisKeyEnum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * token到登录ID的本地缓存，由{@link TakeshiStpLogic}使用，减少同一个请求中多次通过Sa-Token DAO读取Redis
+ * <p>缓存的有效期很短（takeshi.token-cache.ttl），注销、踢人下线、顶人下线时通过Redis的发布订阅通知所有节点立即移除</p>
+ * <p>只缓存token对应的登录ID，token的活跃超时等校验仍由Sa-Token完成</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TakeshiTokenCache implements SmartInitializingSingleton {
+
+    private final RedissonClient redissonClient;
+
+    private final TakeshiProperties takeshiProperties;
+
+    /**
+     * key：token，value：登录ID和过期时间
+     */
+    private final Map<String, Entry> tokenMap = new ConcurrentHashMap<>();
+
+    private RTopic topic;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!this.isEnabled()) {
+            return;
+        }
+        this.topic = redissonClient.getTopic(TakeshiRedisKeyEnum.TOKEN_INVALIDATE_TOPIC.projectKey(), StringCodec.INSTANCE);
+        this.topic.addListener(String.class, (channel, tokenValue) -> tokenMap.remove(tokenValue));
+        SaTokenEventCenter.registerListener(new SaTokenListenerForSimple() {
+            @Override
+            public void doLogout(String loginType, Object loginId, String tokenValue) {
+                TakeshiTokenCache.this.invalidate(tokenValue);
+            }
+
+            @Override
+            public void doKickout(String loginType, Object loginId, String tokenValue) {
+                TakeshiTokenCache.this.invalidate(tokenValue);
+            }
+
+            @Override
+            public void doReplaced(String loginType, Object loginId, String tokenValue) {
+                TakeshiTokenCache.this.invalidate(tokenValue);
+            }
+        });
+    }
+
+    /**
+     * 是否开启了本地缓存
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return takeshiProperties.getTokenCache().getTtl().toNanos() > 0;
+    }
+
+    /**
+     * 获取token对应的登录ID，本地缓存不存在时通过loader获取，只缓存有效的登录ID
+     *
+     * @param tokenValue token
+     * @param loader     从Sa-Token DAO读取登录ID
+     * @param validator  登录ID是否有效
+     * @return 登录ID
+     */
+    public Object get(String tokenValue, Function<String, Object> loader, Function<Object, Boolean> validator) {
+        if (!this.isEnabled() || ObjUtil.isNull(tokenValue)) {
+            return loader.apply(tokenValue);
+        }
+        long now = System.nanoTime();
+        Entry entry = tokenMap.get(tokenValue);
+        if (ObjUtil.isNotNull(entry) && now - entry.expireAtNanos() < 0) {
+            return entry.loginId();
+        }
+        Object loginId = loader.apply(tokenValue);
+        if (validator.apply(loginId)) {
+            TakeshiProperties.TokenCache tokenCache = takeshiProperties.getTokenCache();
+            if (tokenMap.size() >= tokenCache.getMaxSize()) {
+                tokenMap.values().removeIf(item -> now - item.expireAtNanos() >= 0);
+            }
+            if (tokenMap.size() < tokenCache.getMaxSize()) {
+                tokenMap.put(tokenValue, new Entry(loginId, now + tokenCache.getTtl().toNanos()));
+            }
+        } else {
+            tokenMap.remove(tokenValue);
+        }
+        return loginId;
+    }
+
+    /**
+     * 移除本地缓存并通知所有节点
+     *
+     * @param tokenValue token
+     */
+    public void invalidate(String tokenValue) {
+        if (ObjUtil.isNull(tokenValue)) {
+            return;
+        }
+        tokenMap.remove(tokenValue);
+        if (ObjUtil.isNotNull(this.topic)) {
+            this.topic.publishAsync(tokenValue);
+        }
+    }
+
+    /**
+     * 本地缓存的登录ID
+     *
+     * @param loginId       登录ID
+     * @param expireAtNanos 过期时间，System.nanoTime()
+     */
+    private record Entry(Object loginId, long expireAtNanos) {
+    }
+
+}
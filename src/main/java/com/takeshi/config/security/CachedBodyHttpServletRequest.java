@@ -4,18 +4,40 @@ import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * CachedBodyHttpServletRequest
+ * <p>缓存请求体，以便可以重复读取。请求体不超过 {@code spillThreshold} 时缓存在堆内存中，
+ * 超过时写入临时文件并使用内存映射的方式读取，避免大请求体占用堆内存</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
  */
-@Slf4j
 public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
 
-    private final byte[] cachedBody;
+    /**
+     * 默认超过1MB的请求体写入临时文件
+     */
+    private static final long DEFAULT_SPILL_THRESHOLD = DataSize.ofMegabytes(1).toBytes();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 只读的请求体
+     */
+    private final ByteBuffer cachedBody;
 
     /**
      * Constructor
@@ -24,21 +46,141 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
      * @throws IOException IOException
      */
     public CachedBodyHttpServletRequest(HttpServletRequest request) throws IOException {
+        this(request, DEFAULT_SPILL_THRESHOLD, -1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param request        HttpServletRequest
+     * @param spillThreshold 请求体超过此字节数时写入临时文件
+     * @param maxSize        请求体允许的最大字节数，小于0则不限制
+     * @throws IOException                     IOException
+     * @throws MaxUploadSizeExceededException 请求体超过了允许的最大字节数
+     */
+    public CachedBodyHttpServletRequest(HttpServletRequest request, long spillThreshold, long maxSize) throws IOException {
         super(request);
-        InputStream requestInputStream = request.getInputStream();
-        this.cachedBody = StreamUtils.copyToByteArray(requestInputStream);
+        long contentLength = request.getContentLengthLong();
+        if (maxSize >= 0 && contentLength > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        this.cachedBody = readBody(request.getInputStream(), contentLength, spillThreshold, maxSize).asReadOnlyBuffer();
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        return new CachedBodyServletInputStream(this.cachedBody);
+        return new CachedBodyServletInputStream(this.getCachedBody());
     }
 
     @Override
     public BufferedReader getReader() throws IOException {
-        // Create a reader from cachedContent and return it
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(this.cachedBody);
-        return new BufferedReader(new InputStreamReader(byteArrayInputStream));
+        Charset charset = Objects.isNull(this.getCharacterEncoding()) ? StandardCharsets.UTF_8 : Charset.forName(this.getCharacterEncoding());
+        return new BufferedReader(new InputStreamReader(this.getInputStream(), charset));
+    }
+
+    /**
+     * 获取只读的请求体，每次返回一个新的从头开始读取的视图
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer getCachedBody() {
+        return this.cachedBody.duplicate();
+    }
+
+    /**
+     * 获取请求体的字节数
+     *
+     * @return int
+     */
+    public int getContentSize() {
+        return this.cachedBody.limit();
+    }
+
+    /**
+     * 读取请求体
+     *
+     * @param inputStream    请求的输入流
+     * @param contentLength  请求头中的Content-Length，未知时为-1
+     * @param spillThreshold 请求体超过此字节数时写入临时文件
+     * @param maxSize        请求体允许的最大字节数，小于0则不限制
+     * @return ByteBuffer
+     * @throws IOException IOException
+     */
+    private static ByteBuffer readBody(InputStream inputStream, long contentLength, long spillThreshold, long maxSize) throws IOException {
+        if (contentLength > spillThreshold) {
+            return spillToFile(inputStream, new byte[0], 0, maxSize);
+        }
+        int first = inputStream.read();
+        if (first == -1) {
+            return ByteBuffer.allocate(0);
+        }
+        int initialSize = (int) (contentLength > 0 ? contentLength : Math.min(BUFFER_SIZE, spillThreshold));
+        byte[] buffer = new byte[Math.max(initialSize, 1)];
+        buffer[0] = (byte) first;
+        int size = 1;
+        while (true) {
+            if (size == buffer.length) {
+                // 缓冲区已满，先探测是否还有数据，避免请求体刚好填满缓冲区时多余的扩容
+                int next = inputStream.read();
+                if (next == -1) {
+                    return ByteBuffer.wrap(buffer);
+                }
+                if (size >= spillThreshold) {
+                    // 超过阈值，将已读取的部分和剩余部分一起写入临时文件
+                    byte[] head = Arrays.copyOf(buffer, size + 1);
+                    head[size] = (byte) next;
+                    return spillToFile(inputStream, head, head.length, maxSize);
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(Math.max(size * 2L, BUFFER_SIZE), spillThreshold));
+                buffer[size++] = (byte) next;
+            } else {
+                int read = inputStream.read(buffer, size, buffer.length - size);
+                if (read == -1) {
+                    return ByteBuffer.wrap(buffer, 0, size).slice();
+                }
+                size += read;
+            }
+            if (maxSize >= 0 && size > maxSize) {
+                throw new MaxUploadSizeExceededException(maxSize);
+            }
+        }
+    }
+
+    /**
+     * 将请求体写入临时文件，并以内存映射的方式读取，文件在映射后即被删除，映射的内存由GC回收
+     *
+     * @param inputStream 请求的输入流
+     * @param head        已读取的部分请求体
+     * @param headSize    已读取的字节数
+     * @param maxSize     请求体允许的最大字节数，小于0则不限制
+     * @return ByteBuffer
+     * @throws IOException IOException
+     */
+    private static ByteBuffer spillToFile(InputStream inputStream, byte[] head, int headSize, long maxSize) throws IOException {
+        Path tempFile = Files.createTempFile("takeshi-body-", ".tmp");
+        try (FileChannel fileChannel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer headBuffer = ByteBuffer.wrap(head, 0, headSize);
+            while (headBuffer.hasRemaining()) {
+                fileChannel.write(headBuffer);
+            }
+            long size = headSize;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                size += read;
+                if (maxSize >= 0 && size > maxSize) {
+                    throw new MaxUploadSizeExceededException(maxSize);
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    fileChannel.write(byteBuffer);
+                }
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new MaxUploadSizeExceededException(Integer.MAX_VALUE);
+            }
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
     }
 
     /**
@@ -46,7 +188,7 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
      */
     public static class CachedBodyServletInputStream extends ServletInputStream {
 
-        private final InputStream cachedBodyInputStream;
+        private final ByteBuffer cachedBody;
 
         /**
          * Constructor
@@ -54,17 +196,21 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
          * @param cachedBody byte[]
          */
         public CachedBodyServletInputStream(byte[] cachedBody) {
-            this.cachedBodyInputStream = new ByteArrayInputStream(cachedBody);
+            this(ByteBuffer.wrap(cachedBody));
+        }
+
+        /**
+         * Constructor
+         *
+         * @param cachedBody ByteBuffer，会从当前position开始读取
+         */
+        public CachedBodyServletInputStream(ByteBuffer cachedBody) {
+            this.cachedBody = cachedBody;
         }
 
         @Override
         public boolean isFinished() {
-            try {
-                return cachedBodyInputStream.available() == 0;
-            } catch (IOException e) {
-                log.error("CachedBodyServletInputStream.isFinished --> e: ", e);
-            }
-            return false;
+            return !cachedBody.hasRemaining();
         }
 
         @Override
@@ -78,10 +224,43 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
         }
 
         @Override
-        public int read() throws IOException {
-            return cachedBodyInputStream.read();
+        public int read() {
+            return cachedBody.hasRemaining() ? cachedBody.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!cachedBody.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, cachedBody.remaining());
+            cachedBody.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public byte[] readAllBytes() {
+            byte[] bytes = new byte[cachedBody.remaining()];
+            cachedBody.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skip = (int) Math.max(0, Math.min(n, cachedBody.remaining()));
+            cachedBody.position(cachedBody.position() + skip);
+            return skip;
+        }
+
+        @Override
+        public int available() {
+            return cachedBody.remaining();
         }
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.takeshi.config.security;
+
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.pojo.basic.ResponseData;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 在ResponseData序列化之前，把返回的状态码和元数据的大小保存到请求上下文中，记录系统日志时不需要再解析响应数据
+ * <p>没有经过这里的响应（例如不是ResponseData的返回值、直接写入response的响应），系统日志中仍然从响应数据中读取顶层的code字段</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@RestControllerAdvice
+public class CaptureResponseBodyAdvice implements ResponseBodyAdvice<Object> {
+
+    /**
+     * Whether this component supports the given controller method return type
+     * and the selected {@code HttpMessageConverter} type.
+     *
+     * @param returnType    the return type
+     * @param converterType the selected converter type
+     * @return {@code true} if {@link #beforeBodyWrite} should be invoked;
+     * {@code false} otherwise
+     */
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    /**
+     * Invoked after an {@code HttpMessageConverter} is selected and just before
+     * its write method is invoked.
+     *
+     * @param body                  the BODY to be written
+     * @param returnType            the return type of the controller method
+     * @param selectedContentType   the content type selected through content negotiation
+     * @param selectedConverterType the converter type selected to write to the response
+     * @param request               the current request
+     * @param response              the current response
+     * @return the BODY that was passed in or a modified (possibly new) instance
+     */
+    @Nullable
+    @Override
+    public Object beforeBodyWrite(@Nullable Object body, MethodParameter returnType, MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof ResponseData<?> responseData && request instanceof ServletServerHttpRequest servletServerHttpRequest) {
+            TakeshiRequestContext requestContext = TakeshiRequestContext.getDefaultNull(servletServerHttpRequest.getServletRequest());
+            if (ObjUtil.isNotNull(requestContext)) {
+                Object metadata = responseData.getMetadata();
+                requestContext.setResponseCode(responseData.getCode());
+                // 集合、Map、数组、字符串为元素个数（长度），其他对象为1
+                requestContext.setResponseMetadataSize(ObjUtil.isNull(metadata) ? null : Math.max(ObjUtil.length(metadata), 1));
+            }
+        }
+        return body;
+    }
+
+}
@@ -1,10 +1,11 @@
 package com.takeshi.config.security;
 
-import cn.hutool.core.annotation.AnnotationUtil;
 import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.ObjUtil;
 import cn.hutool.crypto.asymmetric.KeyType;
-import com.takeshi.annotation.SystemSecurity;
 import com.takeshi.config.StaticConfig;
+import com.takeshi.config.satoken.TakeshiHandlerDescriptorRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.MethodParameter;
 import org.springframework.http.HttpHeaders;
@@ -15,8 +16,8 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAd
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.util.Objects;
 
 /**
  * 请求的数据解密，@RequestBody 注解的参数生效
@@ -25,8 +26,11 @@ import java.util.Objects;
  */
 @Slf4j
 @RestControllerAdvice
+@RequiredArgsConstructor
 public class DecodeRequestBodyAdvice extends RequestBodyAdviceAdapter {
 
+    private final TakeshiHandlerDescriptorRegistry descriptorRegistry;
+
     /**
      * Invoked first to determine if this interceptor applies.
      *
@@ -38,15 +42,11 @@ public class DecodeRequestBodyAdvice extends RequestBodyAdviceAdapter {
      */
     @Override
     public boolean supports(MethodParameter methodParameter, Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
-        SystemSecurity methodAnnotation = methodParameter.getMethodAnnotation(SystemSecurity.class);
-        if (Objects.nonNull(methodAnnotation)) {
-            return methodAnnotation.inDecode();
-        }
-        SystemSecurity classAnnotation = AnnotationUtil.getAnnotation(methodParameter.getContainingClass(), SystemSecurity.class);
-        if (Objects.nonNull(classAnnotation)) {
-            return classAnnotation.inDecode();
+        Method method = methodParameter.getMethod();
+        if (ObjUtil.isNull(method)) {
+            return false;
         }
-        return false;
+        return descriptorRegistry.get(methodParameter.getContainingClass(), method).isInDecode();
     }
 
     /**
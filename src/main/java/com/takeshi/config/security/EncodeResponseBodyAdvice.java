@@ -1,11 +1,10 @@
 package com.takeshi.config.security;
 
-import cn.hutool.core.annotation.AnnotationUtil;
 import cn.hutool.core.util.ObjUtil;
 import cn.hutool.crypto.asymmetric.KeyType;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.takeshi.annotation.SystemSecurity;
 import com.takeshi.config.StaticConfig;
+import com.takeshi.config.satoken.TakeshiHandlerDescriptorRegistry;
 import com.takeshi.pojo.basic.ResponseData;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -19,7 +18,7 @@ import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
 
-import java.util.Objects;
+import java.lang.reflect.Method;
 
 /**
  * 返回结果中的data字段加密
@@ -33,6 +32,8 @@ public class EncodeResponseBodyAdvice implements ResponseBodyAdvice<ResponseData
 
     private final ObjectMapper objectMapper;
 
+    private final TakeshiHandlerDescriptorRegistry descriptorRegistry;
+
     /**
      * Whether this component supports the given controller method return type
      * and the selected {@code HttpMessageConverter} type.
@@ -44,15 +45,11 @@ public class EncodeResponseBodyAdvice implements ResponseBodyAdvice<ResponseData
      */
     @Override
     public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
-        SystemSecurity methodAnnotation = returnType.getMethodAnnotation(SystemSecurity.class);
-        if (Objects.nonNull(methodAnnotation)) {
-            return methodAnnotation.outEncode();
-        }
-        SystemSecurity classAnnotation = AnnotationUtil.getAnnotation(returnType.getContainingClass(), SystemSecurity.class);
-        if (Objects.nonNull(classAnnotation)) {
-            return classAnnotation.outEncode();
+        Method method = returnType.getMethod();
+        if (ObjUtil.isNull(method)) {
+            return false;
         }
-        return false;
+        return descriptorRegistry.get(returnType.getContainingClass(), method).isOutEncode();
     }
 
     /**
@@ -0,0 +1,47 @@
+package com.takeshi.config.security;
+
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.constants.RequestConstants;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * 兼容旧版本的request属性，读取{@link RequestConstants#CLIENT_IP}等已废弃的属性时从{@link TakeshiRequestContext}中获取
+ * <p>只在读取时才计算，不读取这些属性的请求没有额外开销；通过setAttribute设置过的属性优先</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@SuppressWarnings("deprecation")
+class RequestContextAttributeHttpServletRequest extends HttpServletRequestWrapper {
+
+    private final TakeshiRequestContext requestContext;
+
+    /**
+     * Constructor
+     *
+     * @param request        HttpServletRequest
+     * @param requestContext 请求上下文
+     */
+    RequestContextAttributeHttpServletRequest(HttpServletRequest request, TakeshiRequestContext requestContext) {
+        super(request);
+        this.requestContext = requestContext;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        Object value = super.getAttribute(name);
+        if (ObjUtil.isNotNull(value) || ObjUtil.isNull(name)) {
+            return value;
+        }
+        return switch (name) {
+            case RequestConstants.CLIENT_IP -> requestContext.getClientIp();
+            case RequestConstants.LOGIN_ID -> requestContext.getLoginId();
+            case RequestConstants.METHOD_NAME -> requestContext.getMethodName();
+            case RequestConstants.TAKESHI_LOG -> requestContext.getTakeshiLog();
+            case RequestConstants.PARAM_OBJECT_VALUE -> ObjUtil.isNull(requestContext.getTakeshiLog()) ? null : requestContext.getLogParamObjectValue();
+            case RequestConstants.REQUEST_PARAMS -> requestContext.getRequestParams();
+            default -> null;
+        };
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.takeshi.config.security;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.takeshi.util.GsonUtil;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * 请求开始的日志事件，创建时只保存字段的引用，只有日志真正输出时才在{@link #toString()}中编码成JSON
+ * <p>使用方式：{@code log.info("Request Start: {}", event)}</p>
+ *
+ * @param httpMethod     请求方式
+ * @param requestUrl     请求地址
+ * @param loginId        登录的用户ID
+ * @param sessionData    登录用户的SaSession数据，开启takeshi.enable-session-data-log时才有值
+ * @param clientIp       请求的IP
+ * @param acceptVersion  请求头中的版本号
+ * @param userAgent      用户代理
+ * @param geoPoint       请求头中的经纬度
+ * @param timezone       请求头中的时区
+ * @param timestamp      请求头中的时间戳
+ * @param nonce          请求头中的随机字符串
+ * @author 七濑武【Nanase Takeshi】
+ */
+public record RequestStartLogEvent(String httpMethod, CharSequence requestUrl, Object loginId,
+                                   Map<String, Object> sessionData, String clientIp, String acceptVersion,
+                                   String userAgent, String geoPoint, String timezone, String timestamp,
+                                   String nonce) {
+
+    @Override
+    public String toString() {
+        Gson gson = GsonUtil.gson();
+        StringWriter stringWriter = new StringWriter(256);
+        try (JsonWriter jsonWriter = gson.newJsonWriter(stringWriter)) {
+            jsonWriter.beginObject();
+            jsonWriter.name("Request Address").value("[" + httpMethod + "]" + requestUrl);
+            if (loginId != null) {
+                jsonWriter.name("Requesting UserId");
+                gson.toJson(loginId, loginId.getClass(), jsonWriter);
+                if (sessionData != null && !sessionData.isEmpty()) {
+                    jsonWriter.name("Requesting SaSessionData");
+                    gson.toJson(sessionData, Map.class, jsonWriter);
+                }
+            }
+            name(jsonWriter, "Request IP", clientIp);
+            name(jsonWriter, "Header AcceptVersion", acceptVersion);
+            name(jsonWriter, "Request UserAgent", userAgent);
+            name(jsonWriter, "Header GeoPoint", geoPoint);
+            name(jsonWriter, "Header Timezone", timezone);
+            name(jsonWriter, "Header Timestamp", timestamp);
+            name(jsonWriter, "Header Nonce", nonce);
+            jsonWriter.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * 与GsonUtil.toJson一致，忽略null值
+     */
+    private static void name(JsonWriter jsonWriter, String name, String value) throws IOException {
+        if (value != null) {
+            jsonWriter.name(name).value(value);
+        }
+    }
+
+}
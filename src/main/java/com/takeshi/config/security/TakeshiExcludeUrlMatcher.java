@@ -0,0 +1,131 @@
+package com.takeshi.config.security;
+
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.StrUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.constants.TakeshiConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PatternParseException;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 需要排除的URL匹配器，启动时根据{@link TakeshiConstants#EXCLUDE_URL}和takeshi.exclude-url编译好，
+ * 由TakeshiFilter和TakeshiInterceptor共用
+ * <ul>
+ *     <li>不含通配符的路径放在HashSet中，直接查找</li>
+ *     <li>以 /** 结尾且前面不含通配符的路径只保存前缀，按路径的每一级前缀查找</li>
+ *     <li>其余通配符路径编译成{@link PathPattern}，无法编译的使用{@link AntPathMatcher}匹配</li>
+ * </ul>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Component
+public class TakeshiExcludeUrlMatcher {
+
+    private static final String MATCH_ALL_SUFFIX = "/**";
+
+    /**
+     * 不含通配符的路径
+     */
+    private final Set<String> literalPaths = new HashSet<>();
+
+    /**
+     * 以 /** 结尾的路径的前缀
+     */
+    private final Set<String> prefixPaths = new HashSet<>();
+
+    /**
+     * 其余的通配符路径
+     */
+    private final List<PathPattern> pathPatterns = new ArrayList<>();
+
+    /**
+     * PathPattern无法解析的路径，例如：/**&#47;*.js
+     */
+    private final List<String> antPatterns = new ArrayList<>();
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    /**
+     * 是否排除所有路径
+     */
+    private boolean matchAll;
+
+    /**
+     * 构造函数
+     *
+     * @param takeshiProperties takeshiProperties
+     */
+    public TakeshiExcludeUrlMatcher(TakeshiProperties takeshiProperties) {
+        String[] excludeUrl = ArrayUtil.isEmpty(takeshiProperties.getExcludeUrl()) ? new String[0] : takeshiProperties.getExcludeUrl();
+        PathPatternParser pathPatternParser = new PathPatternParser();
+        Stream.concat(Arrays.stream(TakeshiConstants.EXCLUDE_URL), Arrays.stream(excludeUrl))
+              .filter(StrUtil::isNotBlank)
+              .map(StrUtil::trim)
+              .distinct()
+              .forEach(pattern -> this.compile(pattern, pathPatternParser));
+    }
+
+    /**
+     * 路径是否需要排除
+     *
+     * @param path 请求路径，例如：request.getServletPath()
+     * @return boolean
+     */
+    public boolean matches(String path) {
+        if (this.matchAll || this.literalPaths.contains(path)) {
+            return true;
+        }
+        if (!this.prefixPaths.isEmpty()) {
+            // 依次查找路径本身和它的每一级前缀，例如：/a/b/c、/a/b、/a
+            if (this.prefixPaths.contains(path)) {
+                return true;
+            }
+            for (int i = path.lastIndexOf(StrUtil.C_SLASH); i > 0; i = path.lastIndexOf(StrUtil.C_SLASH, i - 1)) {
+                if (this.prefixPaths.contains(path.substring(0, i))) {
+                    return true;
+                }
+            }
+        }
+        if (!this.pathPatterns.isEmpty()) {
+            PathContainer pathContainer = PathContainer.parsePath(path);
+            for (PathPattern pathPattern : this.pathPatterns) {
+                if (pathPattern.matches(pathContainer)) {
+                    return true;
+                }
+            }
+        }
+        for (String antPattern : this.antPatterns) {
+            if (this.antPathMatcher.match(antPattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compile(String pattern, PathPatternParser pathPatternParser) {
+        if (StrUtil.equals(MATCH_ALL_SUFFIX, pattern)) {
+            this.matchAll = true;
+        } else if (!this.antPathMatcher.isPattern(pattern)) {
+            this.literalPaths.add(pattern);
+        } else if (pattern.endsWith(MATCH_ALL_SUFFIX) && !this.antPathMatcher.isPattern(StrUtil.removeSuffix(pattern, MATCH_ALL_SUFFIX))) {
+            this.prefixPaths.add(StrUtil.removeSuffix(pattern, MATCH_ALL_SUFFIX));
+        } else {
+            try {
+                this.pathPatterns.add(pathPatternParser.parse(pattern));
+            } catch (PatternParseException e) {
+                log.warn("TakeshiExcludeUrlMatcher.compile --> {} will be matched by AntPathMatcher: {}", pattern, e.getMessage());
+                this.antPatterns.add(pattern);
+            }
+        }
+    }
+
+}
@@ -1,22 +1,21 @@
 package com.takeshi.config.security;
 
 import cn.dev33.satoken.stp.StpUtil;
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.lang.Singleton;
-import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.ObjUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.http.Header;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.takeshi.annotation.TakeshiLog;
+import com.takeshi.component.SysLogRollupComponent;
+import com.takeshi.component.SysLogSampler;
 import com.takeshi.component.TakeshiAsyncComponent;
 import com.takeshi.config.properties.TakeshiProperties;
 import com.takeshi.constants.RequestConstants;
-import com.takeshi.constants.TakeshiConstants;
-import com.takeshi.util.GsonUtil;
-import com.takeshi.util.TakeshiUtil;
+import com.takeshi.util.SysLogPayloadUtil;
 import io.micrometer.tracing.Span;
-import io.micrometer.tracing.TraceContext;
 import io.micrometer.tracing.Tracer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,16 +25,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
-import org.springframework.util.AntPathMatcher;
-import org.springframework.util.StopWatch;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartResolver;
-import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * TakeshiFilter
@@ -48,17 +47,23 @@ public class TakeshiFilter extends OncePerRequestFilter {
 
     private final TakeshiAsyncComponent takeshiAsyncComponent;
 
+    private final SysLogSampler sysLogSampler;
+
+    private final SysLogRollupComponent sysLogRollupComponent;
+
     private final TakeshiProperties takeshiProperties;
 
     private final MultipartResolver multipartResolver;
 
     private final Tracer tracer;
 
+    private final ObjectMapper objectMapper;
+
+    private final TakeshiExcludeUrlMatcher takeshiExcludeUrlMatcher;
+
     @Value("${takeshi.enable-response-data-log:true}")
     private boolean enableResponseDataLog;
 
-    private List<String> excludeUrlList;
-
     /**
      * 允许记录的响应内容类型
      */
@@ -69,82 +74,189 @@ public class TakeshiFilter extends OncePerRequestFilter {
             "application/xml"
     );
 
-    @Override
-    public void initFilterBean() throws ServletException {
-        excludeUrlList = new ArrayList<>(List.of(TakeshiConstants.EXCLUDE_URL));
-        if (ArrayUtil.isNotEmpty(takeshiProperties.getExcludeUrl())) {
-            excludeUrlList.addAll(List.of(takeshiProperties.getExcludeUrl()));
-        }
-    }
-
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        AntPathMatcher antPathMatcher = Singleton.get(AntPathMatcher.class.getSimpleName(), AntPathMatcher::new);
-        String servletPath = request.getServletPath();
-        // 如果接口返回值是流式响应，则应将流式响应接口路径配置在excludeUrl中，这样就不会记录日志，否则会无法持续返回流
-        if (excludeUrlList.stream().noneMatch(item -> antPathMatcher.match(item, servletPath))) {
+        if (!takeshiExcludeUrlMatcher.matches(request.getServletPath())) {
             Instant startTime = Instant.now();
-            String stopWatchId = Optional.ofNullable(tracer.currentSpan()).map(Span::context).map(TraceContext::traceId).orElse("");
-            StopWatch stopWatch = new StopWatch(stopWatchId);
-            stopWatch.start();
+            long startNanos = System.nanoTime();
             if (multipartResolver.isMultipart(request)) {
                 request = multipartResolver.resolveMultipart(request);
             } else {
-                request = new CachedBodyHttpServletRequest(request);
-            }
-            String clientIp = TakeshiUtil.getClientIp(request);
-            request.setAttribute(RequestConstants.CLIENT_IP, clientIp);
-            Map<String, Object> map = new LinkedHashMap<>(20);
-            map.put("Request Address", StrUtil.builder(StrUtil.BRACKET_START, request.getMethod(), StrUtil.BRACKET_END, request.getRequestURL()));
-            Object loginIdDefaultNull = StpUtil.getLoginIdDefaultNull();
-            if (ObjUtil.isNotNull(loginIdDefaultNull)) {
-                request.setAttribute(RequestConstants.LOGIN_ID, loginIdDefaultNull);
-                map.put("Requesting UserId", loginIdDefaultNull);
-                Map<String, Object> saSessionDataMap = StpUtil.getSession().getDataMap();
-                if (CollUtil.isNotEmpty(saSessionDataMap)) {
-                    map.put("Requesting SaSessionData", saSessionDataMap);
+                try {
+                    request = new CachedBodyHttpServletRequest(request, takeshiProperties.getRequestBodySpillThreshold().toBytes(), takeshiProperties.getRequestBodyMaxSize().toBytes());
+                } catch (MaxUploadSizeExceededException e) {
+                    log.warn("TakeshiFilter.doFilter --> Request body exceeds the maximum size: {}", e.getMaxUploadSize());
+                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    return;
                 }
             }
-            map.put("Request IP", clientIp);
-            map.put("Header AcceptVersion", request.getHeader(RequestConstants.Header.ACCEPT_VERSION));
-            map.put("Request UserAgent", request.getHeader(Header.USER_AGENT.getValue()));
-            map.put("Header GeoPoint", request.getHeader(RequestConstants.Header.GEO_POINT));
-            map.put("Header Timezone", request.getHeader(RequestConstants.Header.TIMEZONE));
-            map.put("Header Timestamp", request.getHeader(RequestConstants.Header.TIMESTAMP));
-            map.put("Header Nonce", request.getHeader(RequestConstants.Header.NONCE));
-            log.info("TakeshiFilter.doFilter --> Request Start: {}", GsonUtil.toJson(map));
-
-            ContentCachingResponseWrapper cachingResponseWrapper = new ContentCachingResponseWrapper(response);
-            // 执行过滤器
-            filterChain.doFilter(request, cachingResponseWrapper);
-            // 获取 contentCachingResponseWrapper 的返回值
-            byte[] bytes = cachingResponseWrapper.getContentAsByteArray();
-            String responseData = StrUtil.str(bytes, StandardCharsets.UTF_8);
-            if (enableResponseDataLog && ALLOWED_LOG_CONTENT_TYPES.stream().anyMatch(item -> StrUtil.startWithIgnoreCase(cachingResponseWrapper.getContentType(), item))) {
-                log.info("Response Data: {}", responseData);
+            // 请求上下文，客户端IP、登录ID、请求参数等在首次使用时才计算，且只计算一次
+            TakeshiRequestContext requestContext = TakeshiRequestContext.create(request, objectMapper, startTime, startNanos);
+            // 兼容通过RequestConstants.CLIENT_IP等已废弃的属性读取请求信息
+            request = new RequestContextAttributeHttpServletRequest(request, requestContext);
+            if (log.isInfoEnabled()) {
+                Object loginIdDefaultNull = requestContext.getLoginId();
+                // 获取SaSession需要读取Redis，只有开启后才记录
+                Map<String, Object> sessionData = ObjUtil.isNotNull(loginIdDefaultNull) && takeshiProperties.isEnableSessionDataLog() ? StpUtil.getSession().getDataMap() : null;
+                RequestStartLogEvent requestStartLogEvent = new RequestStartLogEvent(request.getMethod(), request.getRequestURL(), loginIdDefaultNull, sessionData, requestContext.getClientIp(),
+                        requestContext.getVersion(), request.getHeader(Header.USER_AGENT.getValue()),
+                        request.getHeader(RequestConstants.Header.GEO_POINT), request.getHeader(RequestConstants.Header.TIMEZONE),
+                        request.getHeader(RequestConstants.Header.TIMESTAMP), request.getHeader(RequestConstants.Header.NONCE));
+                // 只有日志真正输出时才会编码成JSON
+                log.info("TakeshiFilter.doFilter --> Request Start: {}", requestStartLogEvent);
             }
-            cachingResponseWrapper.copyBodyToResponse();
-            stopWatch.stop();
-            long totalTimeMillis = stopWatch.getTotalTimeMillis();
-            log.info("End Of Response, Time Consuming: {} ms", totalTimeMillis);
-            TakeshiLog takeshiLog = (TakeshiLog) request.getAttribute(RequestConstants.TAKESHI_LOG);
-            if (ObjUtil.isNotNull(takeshiLog)) {
-                // 新增一条接口请求相关信息到数据库
-                Object loginId = request.getAttribute(RequestConstants.LOGIN_ID);
-                String paramObjectValue = (String) request.getAttribute(RequestConstants.PARAM_OBJECT_VALUE);
-                String userAgent = request.getHeader(Header.USER_AGENT.getValue());
-                String methodName = (String) request.getAttribute(RequestConstants.METHOD_NAME);
-                Map<String, String> headerMap = new HashMap<>();
-                Enumeration<String> headerNames = request.getHeaderNames();
-                while (headerNames.hasMoreElements()) {
-                    String headerName = headerNames.nextElement();
-                    headerMap.put(headerName, request.getHeader(headerName));
-                }
-                takeshiAsyncComponent.insertSysLog(takeshiLog, loginId, clientIp, userAgent, headerMap, paramObjectValue, request.getMethod(), methodName, request.getRequestURL().toString(), startTime, totalTimeMillis, responseData);
+
+            TeeBodyHttpServletResponse teeResponse = new TeeBodyHttpServletResponse(response, (int) takeshiProperties.getResponseDataCaptureSize().toBytes());
+            // 执行过滤器，响应数据会直接输出给客户端，只保留前部分数据用于记录日志
+            filterChain.doFilter(request, teeResponse);
+            if (request.isAsyncStarted()) {
+                // 异步请求（CompletableFuture、DeferredResult、Callable），响应在异步处理完成后才结束，此时释放容器线程
+                // 请求上下文不是线程安全的，在请求线程中提前获取系统日志需要的信息，容器回调时只使用这些不可变的值
+                request.getAsyncContext().addListener(new CompletionListener(request, teeResponse, requestContext, startTime, LogValues.of(requestContext).resolve(), tracer.currentSpan()));
+            } else {
+                this.complete(request, teeResponse, requestContext, startTime, LogValues.of(requestContext));
             }
             return;
         }
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * 响应结束后打印响应数据和耗时，并保存系统日志
+     *
+     * @param request        request
+     * @param teeResponse    teeResponse
+     * @param requestContext 请求上下文，只用于获取耗时和响应的状态码
+     * @param startTime      请求开始时间
+     * @param logValues      系统日志需要的请求信息
+     */
+    private void complete(HttpServletRequest request, TeeBodyHttpServletResponse teeResponse, TakeshiRequestContext requestContext, Instant startTime, LogValues logValues) {
+        // 获取保留下来的响应数据
+        byte[] bytes = teeResponse.getContentAsByteArray();
+        String responseData = StrUtil.str(bytes, StandardCharsets.UTF_8);
+        if (enableResponseDataLog && ALLOWED_LOG_CONTENT_TYPES.stream().anyMatch(item -> StrUtil.startWithIgnoreCase(teeResponse.getContentType(), item))) {
+            if (teeResponse.isTruncated()) {
+                log.info("Response Data: {}...(truncated, total {} bytes)", responseData, teeResponse.getContentSize());
+            } else {
+                log.info("Response Data: {}", responseData);
+            }
+        }
+        long totalTimeMillis = requestContext.getElapsedMillis();
+        log.info("End Of Response, Time Consuming: {} ms", totalTimeMillis);
+        TakeshiLog takeshiLog = logValues.takeshiLog();
+        if (ObjUtil.isNull(takeshiLog)) {
+            return;
+        }
+        boolean successful = takeshiAsyncComponent.successful(responseData, requestContext.getResponseCode());
+        // 按分钟预聚合，在采样之前统计，被采样丢弃的请求也会统计
+        String urlPattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern ? pattern : request.getServletPath();
+        sysLogRollupComponent.record(logValues.methodName(), urlPattern, totalTimeMillis, successful);
+        // 请求结束后根据结果采样，被丢弃的日志不再组装请求头部和请求参数
+        if (sysLogSampler.sample(takeshiLog.logType(), logValues.methodName(), totalTimeMillis, successful)) {
+            // 新增一条接口请求相关信息到数据库
+            String userAgent = request.getHeader(Header.USER_AGENT.getValue());
+            Map<String, String> headerMap = new HashMap<>();
+            Enumeration<String> headerNames = request.getHeaderNames();
+            while (headerNames.hasMoreElements()) {
+                String headerName = headerNames.nextElement();
+                headerMap.put(headerName, request.getHeader(headerName));
+            }
+            // 只保留了前部分的响应数据时，保存为带有总大小的JSON，response_data列是json类型，不能直接保存被截断的内容
+            String logResponseData = teeResponse.isTruncated() ? SysLogPayloadUtil.truncated(responseData, teeResponse.getContentSize()) : responseData;
+            takeshiAsyncComponent.insertSysLog(takeshiLog, logValues.loginId(), logValues.clientIp(), userAgent, headerMap, logValues.logParamObjectValue().get(),
+                    request.getMethod(), logValues.methodName(), request.getRequestURL().toString(), startTime, totalTimeMillis, logResponseData, successful);
+        }
+    }
+
+    /**
+     * 保存系统日志需要的请求信息
+     *
+     * @param takeshiLog          接口方法上的TakeshiLog注解，没有时为NULL
+     * @param methodName          调用接口的方法名
+     * @param loginId             登录ID
+     * @param clientIp            客户端IP
+     * @param logParamObjectValue 记录到系统日志中的请求参数，被采样丢弃时不会获取
+     */
+    private record LogValues(TakeshiLog takeshiLog, String methodName, Object loginId, String clientIp, Supplier<String> logParamObjectValue) {
+
+        /**
+         * 从请求上下文中获取，请求参数在使用时才从请求上下文中获取，只能在请求线程中使用
+         *
+         * @param requestContext 请求上下文
+         * @return LogValues
+         */
+        private static LogValues of(TakeshiRequestContext requestContext) {
+            TakeshiLog takeshiLog = requestContext.getTakeshiLog();
+            if (ObjUtil.isNull(takeshiLog)) {
+                return new LogValues(null, requestContext.getMethodName(), null, null, () -> null);
+            }
+            return new LogValues(takeshiLog, requestContext.getMethodName(), requestContext.getLoginId(), requestContext.getClientIp(), requestContext::getLogParamObjectValue);
+        }
+
+        /**
+         * 立即获取请求参数，返回的LogValues不再访问请求上下文，可以在其他线程中使用
+         *
+         * @return LogValues
+         */
+        private LogValues resolve() {
+            String value = this.logParamObjectValue.get();
+            return new LogValues(this.takeshiLog, this.methodName, this.loginId, this.clientIp, () -> value);
+        }
+
+    }
+
+    /**
+     * 异步请求完成时执行{@link #complete}，超时或出错时容器同样会回调onComplete
+     * <p>onComplete由容器线程回调，执行时恢复请求的Span，日志和系统日志中的traceId保持一致</p>
+     */
+    private final class CompletionListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+
+        private final TeeBodyHttpServletResponse teeResponse;
+
+        private final TakeshiRequestContext requestContext;
+
+        private final Instant startTime;
+
+        private final LogValues logValues;
+
+        private final Span span;
+
+        private CompletionListener(HttpServletRequest request, TeeBodyHttpServletResponse teeResponse, TakeshiRequestContext requestContext, Instant startTime, LogValues logValues, Span span) {
+            this.request = request;
+            this.teeResponse = teeResponse;
+            this.requestContext = requestContext;
+            this.startTime = startTime;
+            this.logValues = logValues;
+            this.span = span;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+                TakeshiFilter.this.complete(request, teeResponse, requestContext, startTime, logValues);
+            } catch (Exception e) {
+                log.error("TakeshiFilter.onComplete --> Failed to complete async request: ", e);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            log.warn("TakeshiFilter.onTimeout --> Async request timeout: [{}]{}", request.getMethod(), request.getRequestURI());
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            log.error("TakeshiFilter.onError --> Async request error: ", event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 重新开始异步处理时继续监听
+            event.getAsyncContext().addListener(this);
+        }
+
+    }
+
 }
@@ -0,0 +1,441 @@
+package com.takeshi.config.security;
+
+import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.spring.SpringUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.JsonSyntaxException;
+import com.takeshi.annotation.TakeshiLog;
+import com.takeshi.component.ConcurrencyLimitComponent;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.config.satoken.TakeshiHandlerDescriptor;
+import com.takeshi.constants.RequestConstants;
+import com.takeshi.pojo.bo.GeoPointBO;
+import com.takeshi.util.GsonUtil;
+import com.takeshi.util.TakeshiUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRulesException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求上下文，每个请求只创建一次，保存请求相关的信息，由TakeshiFilter、TakeshiInterceptor、TakeshiSaSignTemplate、系统日志等共用
+ * <p>在TakeshiFilter中创建，客户端IP、时区、经纬度、登录ID等在首次使用时才计算，且只计算一次</p>
+ * <p style="color:yellow;">只在处理请求的线程中使用，不是线程安全的，异步请求完成时只读取耗时和响应的状态码</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class TakeshiRequestContext {
+
+    private static final SingletonSupplier<TakeshiProperties> TAKESHI_PROPERTIES_SUPPLIER = SingletonSupplier.of(() -> SpringUtil.getBean(TakeshiProperties.class));
+
+    private final HttpServletRequest request;
+
+    private final TakeshiRequestParams requestParams;
+
+    /**
+     * 请求开始时间
+     */
+    private final Instant startTime;
+
+    /**
+     * 请求开始时间，System.nanoTime()
+     */
+    private final long startNanos;
+
+    private String clientIp;
+
+    private boolean timezoneResolved;
+
+    private ZoneId timezone;
+
+    private boolean geoPointResolved;
+
+    private GeoPointBO geoPoint;
+
+    private boolean versionResolved;
+
+    private String version;
+
+    private boolean loginIdResolved;
+
+    private Object loginId;
+
+    /**
+     * 接口方法的描述，由TakeshiInterceptor设置，没有进入Controller方法时为NULL
+     */
+    private TakeshiHandlerDescriptor descriptor;
+
+    /**
+     * 记录到系统日志中的请求参数
+     */
+    private String logParamObjectValue;
+
+    private boolean deadlineResolved;
+
+    /**
+     * 请求的截止时间，System.nanoTime()，没有超时限制时为NULL
+     */
+    private Long deadlineNanos;
+
+    /**
+     * 并发许可，由TakeshiInterceptor获取，请求结束时归还
+     */
+    private ConcurrencyLimitComponent.Permit concurrencyPermit;
+
+    /**
+     * 返回的ResponseData中的状态码，由CaptureResponseBodyAdvice设置，响应不是ResponseData时为NULL
+     * <p>异步请求在异步处理的线程中设置，在容器回调的线程中读取</p>
+     */
+    private volatile Integer responseCode;
+
+    /**
+     * 返回的ResponseData中元数据的大小
+     */
+    private Integer responseMetadataSize;
+
+    private TakeshiRequestContext(HttpServletRequest request, ObjectMapper objectMapper, Instant startTime, long startNanos) {
+        this.request = request;
+        this.requestParams = TakeshiRequestParams.create(request, objectMapper);
+        this.startTime = startTime;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 创建请求上下文并保存到request中，以当前时间作为请求开始时间
+     *
+     * @param request      request
+     * @param objectMapper objectMapper
+     * @return TakeshiRequestContext
+     */
+    public static TakeshiRequestContext create(HttpServletRequest request, ObjectMapper objectMapper) {
+        return create(request, objectMapper, Instant.now(), System.nanoTime());
+    }
+
+    /**
+     * 创建请求上下文并保存到request中
+     *
+     * @param request      request
+     * @param objectMapper objectMapper
+     * @param startTime    请求开始时间
+     * @param startNanos   请求开始时间，System.nanoTime()
+     * @return TakeshiRequestContext
+     */
+    public static TakeshiRequestContext create(HttpServletRequest request, ObjectMapper objectMapper, Instant startTime, long startNanos) {
+        TakeshiRequestContext requestContext = new TakeshiRequestContext(request, objectMapper, startTime, startNanos);
+        request.setAttribute(RequestConstants.REQUEST_CONTEXT, requestContext);
+        return requestContext;
+    }
+
+    /**
+     * 获取request中的请求上下文，不存在时创建一个
+     *
+     * @param request      request
+     * @param objectMapper objectMapper
+     * @return TakeshiRequestContext
+     */
+    public static TakeshiRequestContext get(HttpServletRequest request, ObjectMapper objectMapper) {
+        TakeshiRequestContext requestContext = getDefaultNull(request);
+        return ObjUtil.isNull(requestContext) ? create(request, objectMapper) : requestContext;
+    }
+
+    /**
+     * 获取request中的请求上下文，不存在时返回NULL
+     *
+     * @param request request
+     * @return TakeshiRequestContext
+     */
+    public static TakeshiRequestContext getDefaultNull(HttpServletRequest request) {
+        if (request.getAttribute(RequestConstants.REQUEST_CONTEXT) instanceof TakeshiRequestContext requestContext) {
+            return requestContext;
+        }
+        return null;
+    }
+
+    /**
+     * 获取当前线程正在处理的请求的上下文，不在请求线程中或者请求没有经过TakeshiFilter时返回NULL
+     *
+     * @return TakeshiRequestContext
+     */
+    public static TakeshiRequestContext current() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes instanceof ServletRequestAttributes servletRequestAttributes) {
+            return getDefaultNull(servletRequestAttributes.getRequest());
+        }
+        return null;
+    }
+
+    /**
+     * 获取请求参数
+     *
+     * @return TakeshiRequestParams
+     */
+    public TakeshiRequestParams getRequestParams() {
+        return this.requestParams;
+    }
+
+    /**
+     * 获取请求开始时间
+     *
+     * @return Instant
+     */
+    public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * 获取请求开始时间，System.nanoTime()
+     *
+     * @return long
+     */
+    public long getStartNanos() {
+        return this.startNanos;
+    }
+
+    /**
+     * 获取请求开始到现在的耗时
+     *
+     * @return 毫秒
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos);
+    }
+
+    /**
+     * 获取客户端IP
+     *
+     * @return 客户端IP
+     */
+    public String getClientIp() {
+        if (ObjUtil.isNull(this.clientIp)) {
+            this.clientIp = TakeshiUtil.getClientIp(this.request);
+        }
+        return this.clientIp;
+    }
+
+    /**
+     * 从header里面获取时区，如果没有则抛出异常
+     *
+     * @return {@link ZoneId}
+     */
+    public ZoneId getTimezone() {
+        ZoneId zoneId;
+        try {
+            zoneId = this.getTimezoneDefaultNull();
+        } catch (ZoneRulesException e) {
+            throw new IllegalArgumentException(e.getLocalizedMessage());
+        }
+        Assert.notNull(zoneId, "Timezone must not be null");
+        return zoneId;
+    }
+
+    /**
+     * 从header里面获取时区，如果没有则返回NULL
+     *
+     * @return {@link ZoneId}
+     */
+    public ZoneId getTimezoneDefaultNull() {
+        if (!this.timezoneResolved) {
+            String value = this.request.getHeader(RequestConstants.Header.TIMEZONE);
+            this.timezone = StrUtil.isBlank(value) ? null : ZoneId.of(value);
+            this.timezoneResolved = true;
+        }
+        return this.timezone;
+    }
+
+    /**
+     * 从header里面获取经纬度，如果没有则抛出异常
+     *
+     * @return {@link GeoPointBO}
+     */
+    public GeoPointBO getGeoPoint() {
+        GeoPointBO geoPointBO;
+        try {
+            geoPointBO = this.getGeoPointDefaultNull();
+        } catch (JsonSyntaxException e) {
+            geoPointBO = null;
+        }
+        Assert.notNull(geoPointBO, "Geo point data format error");
+        return geoPointBO;
+    }
+
+    /**
+     * 从header里面获取经纬度，如果没有则返回NULL
+     *
+     * @return {@link GeoPointBO}
+     */
+    public GeoPointBO getGeoPointDefaultNull() {
+        if (!this.geoPointResolved) {
+            String value = this.request.getHeader(RequestConstants.Header.GEO_POINT);
+            this.geoPoint = StrUtil.isBlank(value) ? null : GsonUtil.fromJson(value, GeoPointBO.class);
+            this.geoPointResolved = true;
+        }
+        return this.geoPoint;
+    }
+
+    /**
+     * 从header里面获取接口版本（Accept-Version），如果没有则返回NULL
+     *
+     * @return 接口版本
+     */
+    public String getVersion() {
+        if (!this.versionResolved) {
+            this.version = StrUtil.emptyToNull(this.request.getHeader(RequestConstants.Header.ACCEPT_VERSION));
+            this.versionResolved = true;
+        }
+        return this.version;
+    }
+
+    /**
+     * 获取登录ID，首次调用时通过Sa-Token获取，未登录时返回NULL
+     *
+     * @return 登录ID
+     */
+    public Object getLoginId() {
+        if (!this.loginIdResolved) {
+            this.loginId = StpUtil.getLoginIdDefaultNull();
+            this.loginIdResolved = true;
+        }
+        return this.loginId;
+    }
+
+    /**
+     * 获取接口方法的描述，没有进入Controller方法时返回NULL
+     *
+     * @return TakeshiHandlerDescriptor
+     */
+    public TakeshiHandlerDescriptor getDescriptor() {
+        return this.descriptor;
+    }
+
+    /**
+     * 设置接口方法的描述
+     *
+     * @param descriptor 接口方法的描述
+     */
+    public void setDescriptor(TakeshiHandlerDescriptor descriptor) {
+        this.descriptor = descriptor;
+        // 截止时间与接口方法上的超时时间有关，重新计算
+        this.deadlineResolved = false;
+    }
+
+    /**
+     * 获取调用接口的方法名，没有进入Controller方法时返回NULL
+     *
+     * @return 方法名
+     */
+    public String getMethodName() {
+        return ObjUtil.isNull(this.descriptor) ? null : this.descriptor.getMethodName();
+    }
+
+    /**
+     * 获取接口方法上的TakeshiLog注解，没有时返回NULL
+     *
+     * @return TakeshiLog
+     */
+    public TakeshiLog getTakeshiLog() {
+        return ObjUtil.isNull(this.descriptor) ? null : this.descriptor.getTakeshiLog();
+    }
+
+    /**
+     * 获取记录到系统日志中的请求参数，排除了TakeshiLog注解中配置的字段
+     *
+     * @return 请求参数
+     */
+    public String getLogParamObjectValue() {
+        if (ObjUtil.isNull(this.logParamObjectValue) && ObjUtil.isNotNull(this.descriptor)) {
+            this.logParamObjectValue = this.requestParams.exclude(this.descriptor.getLogExclusionFieldNames()).getParamObjectValue();
+        }
+        return this.logParamObjectValue;
+    }
+
+    /**
+     * 获取并发许可，没有开启并发限制时返回NULL
+     *
+     * @return Permit
+     */
+    public ConcurrencyLimitComponent.Permit getConcurrencyPermit() {
+        return this.concurrencyPermit;
+    }
+
+    /**
+     * 设置并发许可
+     *
+     * @param concurrencyPermit 并发许可
+     */
+    public void setConcurrencyPermit(ConcurrencyLimitComponent.Permit concurrencyPermit) {
+        this.concurrencyPermit = concurrencyPermit;
+    }
+
+    /**
+     * 获取返回的ResponseData中的状态码，响应不是ResponseData时返回NULL
+     *
+     * @return 状态码
+     */
+    public Integer getResponseCode() {
+        return this.responseCode;
+    }
+
+    /**
+     * 设置返回的ResponseData中的状态码
+     *
+     * @param responseCode 状态码
+     */
+    public void setResponseCode(Integer responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * 获取返回的ResponseData中元数据的大小，集合、Map、数组、字符串为元素个数（长度），其他对象为1，没有元数据时返回NULL
+     *
+     * @return 元数据的大小
+     */
+    public Integer getResponseMetadataSize() {
+        return this.responseMetadataSize;
+    }
+
+    /**
+     * 设置返回的ResponseData中元数据的大小
+     *
+     * @param responseMetadataSize 元数据的大小
+     */
+    public void setResponseMetadataSize(Integer responseMetadataSize) {
+        this.responseMetadataSize = responseMetadataSize;
+    }
+
+    /**
+     * 获取请求剩余的处理时间，取header中的request-timeout和RequestPriority注解的timeoutMillis中较小的值，从请求开始计算
+     * <p>header中的request-timeout最大为maxRequestTimeout</p>
+     *
+     * @return 剩余时间，已超时时为0或负数，没有超时限制时返回NULL
+     */
+    public Duration getRemaining() {
+        if (!this.deadlineResolved) {
+            long timeoutMillis = ObjUtil.isNull(this.descriptor) ? 0 : this.descriptor.getTimeoutMillis();
+            String value = this.request.getHeader(RequestConstants.Header.REQUEST_TIMEOUT);
+            if (NumberUtil.isLong(value)) {
+                // 客户端传入的超时时间不可信，限制在maxRequestTimeout以内
+                long headerMillis = Math.min(Long.parseLong(value), TAKESHI_PROPERTIES_SUPPLIER.obtain().getMaxRequestTimeout().toMillis());
+                if (headerMillis > 0) {
+                    timeoutMillis = timeoutMillis > 0 ? Math.min(timeoutMillis, headerMillis) : headerMillis;
+                }
+            }
+            // toNanos溢出时会饱和为Long.MAX_VALUE，这种超时时间视为没有超时限制
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.deadlineNanos = timeoutMillis > 0 && timeoutNanos < Long.MAX_VALUE ? this.startNanos + timeoutNanos : null;
+            this.deadlineResolved = true;
+        }
+        return ObjUtil.isNull(this.deadlineNanos) ? null : Duration.ofNanos(this.deadlineNanos - System.nanoTime());
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.takeshi.config.security;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.servlet.JakartaServletUtil;
+import cn.hutool.http.ContentType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.SneakyThrows;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 请求参数，每个请求只解析一次，由TakeshiInterceptor、TakeshiSaSignTemplate、重复提交校验等共用
+ * <p>随{@link TakeshiRequestContext}在TakeshiFilter中创建，首次使用时才解析请求体，解析失败时异常会由Controller的全局异常处理</p>
+ * <p style="color:yellow;">返回的JsonNode是共享的，不允许修改，需要排除字段时使用{@link #exclude(String...)}获取一个新的视图</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class TakeshiRequestParams {
+
+    private final ObjectMapper objectMapper;
+
+    private final HttpServletRequest request;
+
+    /**
+     * 请求体
+     */
+    private JsonNode bodyNode;
+
+    /**
+     * 所有请求参数，包含contentType、urlParam、fileParam、bodyParam
+     */
+    private ObjectNode paramObjectNode;
+
+    /**
+     * paramObjectNode序列化后的值
+     */
+    private String paramObjectValue;
+
+    /**
+     * 请求体中的顶层字段，用于参数签名
+     */
+    private Map<String, String> bodyParamMap;
+
+    private TakeshiRequestParams(ObjectMapper objectMapper, HttpServletRequest request) {
+        this.objectMapper = objectMapper;
+        this.request = request;
+    }
+
+    private TakeshiRequestParams(TakeshiRequestParams source, ObjectNode paramObjectNode) {
+        this.objectMapper = source.objectMapper;
+        this.request = source.request;
+        this.bodyNode = Optional.ofNullable(paramObjectNode.get("bodyParam")).orElse(MissingNode.getInstance());
+        this.paramObjectNode = paramObjectNode;
+    }
+
+    /**
+     * 创建请求参数，由{@link TakeshiRequestContext}创建并持有
+     *
+     * @param request      request
+     * @param objectMapper objectMapper
+     * @return TakeshiRequestParams
+     */
+    static TakeshiRequestParams create(HttpServletRequest request, ObjectMapper objectMapper) {
+        return new TakeshiRequestParams(objectMapper, request);
+    }
+
+    /**
+     * 获取请求上下文中的请求参数，请求上下文不存在时创建一个
+     *
+     * @param request      request
+     * @param objectMapper objectMapper
+     * @return TakeshiRequestParams
+     */
+    public static TakeshiRequestParams get(HttpServletRequest request, ObjectMapper objectMapper) {
+        return TakeshiRequestContext.get(request, objectMapper).getRequestParams();
+    }
+
+    /**
+     * 获取请求体，没有请求体或者不是{@link CachedBodyHttpServletRequest}时返回{@link MissingNode}
+     *
+     * @return JsonNode
+     */
+    @SneakyThrows
+    public JsonNode getBodyNode() {
+        if (ObjUtil.isNull(this.bodyNode)) {
+            if (this.request instanceof CachedBodyHttpServletRequest cachedBodyHttpServletRequest
+                    && cachedBodyHttpServletRequest.getContentSize() > 0) {
+                this.bodyNode = objectMapper.readTree(cachedBodyHttpServletRequest.getInputStream());
+            } else {
+                this.bodyNode = MissingNode.getInstance();
+            }
+        }
+        return this.bodyNode;
+    }
+
+    /**
+     * 获取所有请求参数，包含contentType、urlParam、fileParam、bodyParam
+     *
+     * @return ObjectNode
+     */
+    public ObjectNode getParamObjectNode() {
+        if (ObjUtil.isNull(this.paramObjectNode)) {
+            this.paramObjectNode = this.buildParamObjectNode();
+        }
+        return this.paramObjectNode;
+    }
+
+    /**
+     * 获取序列化后的所有请求参数
+     *
+     * @return String
+     */
+    @SneakyThrows
+    public String getParamObjectValue() {
+        if (ObjUtil.isNull(this.paramObjectValue)) {
+            this.paramObjectValue = objectMapper.writeValueAsString(this.getParamObjectNode());
+        }
+        return this.paramObjectValue;
+    }
+
+    /**
+     * 获取请求体中的顶层字段，值为非字符串时使用JSON字符串表示，用于参数签名
+     *
+     * @return 不可修改的Map，请求体不是JSON对象时返回空Map
+     */
+    public Map<String, String> getBodyParamMap() {
+        if (ObjUtil.isNull(this.bodyParamMap)) {
+            JsonNode body = this.getBodyNode();
+            if (body.isObject() && !body.isEmpty()) {
+                Map<String, String> map = new HashMap<>(body.size() * 4 / 3 + 1);
+                body.fields().forEachRemaining(entry -> {
+                    JsonNode value = entry.getValue();
+                    map.put(entry.getKey(), value.isNull() ? null : value.isValueNode() ? value.asText() : value.toString());
+                });
+                this.bodyParamMap = Collections.unmodifiableMap(map);
+            } else {
+                this.bodyParamMap = Collections.emptyMap();
+            }
+        }
+        return this.bodyParamMap;
+    }
+
+    /**
+     * 排除指定字段（任意层级），返回新的视图，不会修改当前对象；没有需要排除的字段时返回当前对象
+     *
+     * @param fieldNames 需要排除的字段名称
+     * @return TakeshiRequestParams
+     */
+    public TakeshiRequestParams exclude(String... fieldNames) {
+        if (ArrayUtil.isEmpty(fieldNames)) {
+            return this;
+        }
+        ObjectNode source = this.getParamObjectNode();
+        if (Arrays.stream(fieldNames).allMatch(fieldName -> ObjUtil.isNull(source.findParent(fieldName)))) {
+            return this;
+        }
+        ObjectNode copy = source.deepCopy();
+        for (String fieldName : fieldNames) {
+            copy.findParents(fieldName).forEach(item -> ((ObjectNode) item).remove(fieldName));
+        }
+        return new TakeshiRequestParams(this, copy);
+    }
+
+    private ObjectNode buildParamObjectNode() {
+        Map<String, String> urlParam = JakartaServletUtil.getParamMap(request);
+        Object fileParam = null;
+        JsonNode bodyParam = null;
+        if (request instanceof MultipartHttpServletRequest multipartRequest) {
+            // multipart/form-data方式上传的文件
+            MultiValueMap<String, MultipartFile> multiFileMap = multipartRequest.getMultiFileMap();
+            fileParam = multiFileMap.entrySet()
+                                    .stream()
+                                    .collect(Collectors.toMap(
+                                                     Map.Entry::getKey,
+                                                     entry -> entry.getValue()
+                                                                   .stream()
+                                                                   .map(multipartFile -> StrUtil.builder(multipartFile.getOriginalFilename(), StrUtil.BRACKET_START, DataSizeUtil.format(multipartFile.getSize()), StrUtil.BRACKET_END))
+                                                                   .collect(Collectors.joining(StrUtil.COMMA))
+                                             )
+                                    );
+        } else if (StrUtil.startWithIgnoreCase(request.getContentType(), ContentType.OCTET_STREAM.toString())) {
+            // application/octet-stream方式上传的文件
+            fileParam = DataSizeUtil.format(request.getContentLength());
+        } else if (!this.getBodyNode().isMissingNode()) {
+            bodyParam = this.getBodyNode();
+        }
+        ObjectNode objectNode = objectMapper.createObjectNode();
+        if (StrUtil.isNotBlank(request.getContentType())) {
+            objectNode.put("contentType", request.getContentType());
+        }
+        if (CollUtil.isNotEmpty(urlParam)) {
+            objectNode.set("urlParam", objectMapper.valueToTree(urlParam));
+        }
+        if (ObjUtil.isNotNull(fileParam)) {
+            objectNode.set("fileParam", objectMapper.valueToTree(fileParam));
+        }
+        if (ObjUtil.isNotNull(bodyParam)) {
+            objectNode.set("bodyParam", bodyParam);
+        }
+        return objectNode;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.takeshi.config.security;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+/**
+ * TeeBodyHttpServletResponse
+ * <p>写入的响应数据会直接输出给客户端，同时只保留前 {@code captureLimit} 个字节用于打印日志和保存到数据库，
+ * 不会像{@link org.springframework.web.util.ContentCachingResponseWrapper}一样把整个响应体缓存在内存中，因此流式响应也能正常持续输出</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public class TeeBodyHttpServletResponse extends HttpServletResponseWrapper {
+
+    private final int captureLimit;
+
+    private final ByteArrayOutputStream captured;
+
+    private long contentSize;
+
+    private TeeServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    /**
+     * Constructor
+     *
+     * @param response     HttpServletResponse
+     * @param captureLimit 最多保留的响应数据字节数
+     */
+    public TeeBodyHttpServletResponse(HttpServletResponse response, int captureLimit) {
+        super(response);
+        this.captureLimit = Math.max(captureLimit, 0);
+        this.captured = new ByteArrayOutputStream(Math.min(this.captureLimit, 1024));
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response.");
+        }
+        return this.teeOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            if (this.outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response.");
+            }
+            Charset charset = Charset.forName(this.getCharacterEncoding());
+            this.writer = new PrintWriter(new OutputStreamWriter(this.teeOutputStream(), charset));
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        } else if (this.outputStream != null) {
+            this.outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        this.resetCaptured();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        this.resetCaptured();
+    }
+
+    /**
+     * 获取保留下来的响应数据（最多 {@code captureLimit} 个字节）
+     *
+     * @return byte[]
+     */
+    public byte[] getContentAsByteArray() {
+        if (this.writer != null) {
+            // 确保PrintWriter中缓冲的字符已经写入
+            this.writer.flush();
+        }
+        return this.captured.toByteArray();
+    }
+
+    /**
+     * 获取实际写出的响应数据总字节数
+     *
+     * @return long
+     */
+    public long getContentSize() {
+        return this.contentSize;
+    }
+
+    /**
+     * 保留下来的响应数据是否被截断了
+     *
+     * @return boolean
+     */
+    public boolean isTruncated() {
+        return this.contentSize > this.captured.size();
+    }
+
+    private TeeServletOutputStream teeOutputStream() throws IOException {
+        if (this.outputStream == null) {
+            this.outputStream = new TeeServletOutputStream(super.getOutputStream());
+        }
+        return this.outputStream;
+    }
+
+    private void resetCaptured() {
+        this.captured.reset();
+        this.contentSize = 0;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        this.contentSize += len;
+        int remaining = this.captureLimit - this.captured.size();
+        if (remaining > 0) {
+            this.captured.write(b, off, Math.min(remaining, len));
+        }
+    }
+
+    /**
+     * 写入时同时输出给客户端并保留前部分数据
+     */
+    private class TeeServletOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private TeeServletOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.delegate.write(b);
+            contentSize++;
+            if (captured.size() < captureLimit) {
+                captured.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.delegate.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.delegate.setWriteListener(writeListener);
+        }
+
+    }
+
+}
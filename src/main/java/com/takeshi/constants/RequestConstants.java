@@ -2,10 +2,12 @@ package com.takeshi.constants;
 
 import cn.dev33.satoken.context.SaHolder;
 import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.ObjUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.http.useragent.UserAgent;
 import cn.hutool.http.useragent.UserAgentUtil;
 import com.google.gson.JsonSyntaxException;
+import com.takeshi.config.security.TakeshiRequestContext;
 import com.takeshi.pojo.bo.GeoPointBO;
 import com.takeshi.util.GsonUtil;
 import lombok.SneakyThrows;
@@ -30,29 +32,57 @@ public interface RequestConstants {
      */
     String TRACE_ID = "traceId";
 
+    /**
+     * 请求上下文{@link com.takeshi.config.security.TakeshiRequestContext}
+     */
+    String REQUEST_CONTEXT = "takeshiRequestContext";
+
     /**
      * 登录用户ID
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getLoginId()}，读取该属性时从请求上下文中获取
      */
+    @Deprecated
     String LOGIN_ID = "loginId";
 
     /**
      * 调用接口方法名
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getMethodName()}，读取该属性时从请求上下文中获取
      */
+    @Deprecated
     String METHOD_NAME = "methodName";
 
     /**
      * TakeshiLog注解
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getTakeshiLog()}，读取该属性时从请求上下文中获取
      */
+    @Deprecated
     String TAKESHI_LOG = "takeshiLog";
 
     /**
      * 接口请求的参数
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getLogParamObjectValue()}，读取该属性时从请求上下文中获取
      */
+    @Deprecated
     String PARAM_OBJECT_VALUE = "paramObjectValue";
 
+    /**
+     * 解析后的请求参数{@link com.takeshi.config.security.TakeshiRequestParams}
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getRequestParams()}，读取该属性时从请求上下文中获取
+     */
+    @Deprecated
+    String REQUEST_PARAMS = "requestParams";
+
     /**
      * 客户端IP
+     *
+     * @deprecated 使用{@link TakeshiRequestContext#getClientIp()}，读取该属性时从请求上下文中获取
      */
+    @Deprecated
     String CLIENT_IP = "clientIp";
 
     /**
@@ -90,6 +120,11 @@ public interface RequestConstants {
          */
         String TIMESTAMP = "timestamp";
 
+        /**
+         * 调用接口header里面传的请求超时时间字段（毫秒），超过此时间后数据库查询、外部调用会被中断，最大为takeshi.max-request-timeout
+         */
+        String REQUEST_TIMEOUT = "request-timeout";
+
         /**
          * 仅一次有效的随机字符串，可以使用用户信息+时间戳+随机数等信息做个哈希值，作为nonce值
          */
@@ -159,11 +194,15 @@ public interface RequestConstants {
         }
 
         /**
-         * 从header里面获取时区，如果没有则抛出异常
+         * 从header里面获取时区，如果没有则抛出异常，经过TakeshiFilter的请求从请求上下文中获取
          *
          * @return {@link ZoneId}
          */
         static ZoneId getTimezone() {
+            TakeshiRequestContext requestContext = TakeshiRequestContext.current();
+            if (ObjUtil.isNotNull(requestContext)) {
+                return requestContext.getTimezone();
+            }
             try {
                 String timezone = SaHolder.getRequest().getHeader(TIMEZONE);
                 Assert.notBlank(timezone, "Timezone must not be null");
@@ -174,11 +213,15 @@ public interface RequestConstants {
         }
 
         /**
-         * 从header里面获取时区，如果没有则返回NULL
+         * 从header里面获取时区，如果没有则返回NULL，经过TakeshiFilter的请求从请求上下文中获取
          *
          * @return {@link ZoneId}
          */
         static ZoneId getTimezoneDefaultNull() {
+            TakeshiRequestContext requestContext = TakeshiRequestContext.current();
+            if (ObjUtil.isNotNull(requestContext)) {
+                return requestContext.getTimezoneDefaultNull();
+            }
             String timezone = SaHolder.getRequest().getHeader(TIMEZONE);
             if (StrUtil.isBlank(timezone)) {
                 return null;
@@ -187,11 +230,15 @@ public interface RequestConstants {
         }
 
         /**
-         * 从header里面获取经纬度，如果没有则抛出异常
+         * 从header里面获取经纬度，如果没有则抛出异常，经过TakeshiFilter的请求从请求上下文中获取
          *
          * @return {@link GeoPointBO}
          */
         static GeoPointBO getGeoPoint() {
+            TakeshiRequestContext requestContext = TakeshiRequestContext.current();
+            if (ObjUtil.isNotNull(requestContext)) {
+                return requestContext.getGeoPoint();
+            }
             try {
                 String geoPoint = SaHolder.getRequest().getHeader(GEO_POINT);
                 Assert.notBlank(geoPoint, "Geo point must not be null");
@@ -202,11 +249,15 @@ public interface RequestConstants {
         }
 
         /**
-         * 从header里面获取经纬度，如果没有则返回NULL
+         * 从header里面获取经纬度，如果没有则返回NULL，经过TakeshiFilter的请求从请求上下文中获取
          *
          * @return {@link GeoPointBO}
          */
         static GeoPointBO getGeoPointDefaultNull() {
+            TakeshiRequestContext requestContext = TakeshiRequestContext.current();
+            if (ObjUtil.isNotNull(requestContext)) {
+                return requestContext.getGeoPointDefaultNull();
+            }
             String geoPoint = SaHolder.getRequest().getHeader(GEO_POINT);
             if (StrUtil.isBlank(geoPoint)) {
                 return null;
@@ -104,6 +104,16 @@ public interface TakeshiCode {
      */
     RetBO INVALID_VALUE = new RetBO(1007, "invalidValue.message");
 
+    /**
+     * 系统繁忙，请求已被拒绝，请稍后再试
+     */
+    RetBO OVERLOADED = new RetBO(1008, "overloaded.message");
+
+    /**
+     * 请求处理超时
+     */
+    RetBO REQUEST_TIMEOUT = new RetBO(1009, "requestTimeout.message");
+
     /**
      * 验证码过期/不存在
      */
@@ -0,0 +1,24 @@
+package com.takeshi.enums;
+
+/**
+ * 请求优先级枚举，系统过载时优先拒绝低优先级的请求
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public enum RequestPriorityEnum {
+
+    /**
+     * 高优先级，例如登录、支付回调，并发达到自适应限制时仍可继续进入，最多到自适应限制的一定比例（takeshi.concurrency-limit.high-priority-ratio），且不超过takeshi.concurrency-limit.max-limit
+     */
+    HIGH,
+    /**
+     * 普通优先级，受自适应并发限制
+     */
+    NORMAL,
+    /**
+     * 低优先级，例如统计、导出，并发达到自适应限制的一定比例（takeshi.concurrency-limit.low-priority-ratio）时就会被拒绝
+     */
+    LOW,
+    ;
+
+}
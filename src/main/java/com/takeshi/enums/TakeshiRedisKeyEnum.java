@@ -19,17 +19,38 @@ public enum TakeshiRedisKeyEnum implements TakeshiRedisKeyFormat {
     PUBLIC_KEY_BASE64("publicKeyBase64"),
     /**
      * IP黑名单{clientIp}
+     * <p>IP放在hash tag中，与IP_RATE_LIMIT在Redis Cluster中位于同一个slot，限流脚本可以同时操作这两个key</p>
      */
-    IP_BLACKLIST("rate:ip:blacklist:{}"),
+    IP_BLACKLIST("rate:ip:blacklist:{{}}"),
+    /**
+     * IP黑名单变更通知的Topic
+     */
+    IP_BLACKLIST_TOPIC("topic:ip:blacklist"),
+    /**
+     * token失效通知的Topic
+     */
+    TOKEN_INVALIDATE_TOPIC("topic:token:invalidate"),
+    /**
+     * 角色列表缓存{loginType}{loginId}
+     */
+    ROLE_LIST("auth:role:{}:{}"),
+    /**
+     * 权限列表缓存{loginType}{loginId}
+     */
+    PERMISSION_LIST("auth:permission:{}:{}"),
+    /**
+     * 角色、权限缓存失效通知的Topic
+     */
+    PERMISSION_INVALIDATE_TOPIC("topic:auth:invalidate"),
     /**
      * nonce限制{nonce}
      */
     NONCE_RATE_LIMIT("rate:nonce:{}"),
     /**
-     * ip限制
-     * {clientIp}{httpMethod}{requestURI}
+     * ip限制，每个IP一个Hash，字段为：{httpMethod}:{requestURI}
+     * {clientIp}，IP放在hash tag中，与IP_BLACKLIST位于同一个slot
      */
-    IP_RATE_LIMIT("rate:ip:{}:{}:{}"),
+    IP_RATE_LIMIT("rate:ip:{{}}"),
     /**
      * 重复提交{MD5后的值}
      */
@@ -2,10 +2,12 @@ package com.takeshi.extra.sms;
 
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.extra.spring.SpringUtil;
+import cn.hutool.http.HttpGlobalConfig;
 import cn.hutool.http.HttpUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.takeshi.config.properties.SmsBroadcastProperties;
 import com.takeshi.util.AwsSecretsManagerUtil;
+import com.takeshi.util.DeadlineUtil;
 import com.takeshi.util.GsonUtil;
 import net.dreamlu.mica.auto.annotation.AutoService;
 import org.slf4j.Logger;
@@ -70,7 +72,7 @@ public class SmsBroadcastImpl implements SmsInterface {
             map.put("maxsplit", String.valueOf((StrUtil.length(message) / 160) + 1));
             map.put("Content-Type", "UTF-8");
             log.info("SmsBroadcastImpl.sendMessage --> map: {}", GsonUtil.toJson(map));
-            String result = HttpUtil.post(URL, map);
+            String result = HttpUtil.post(URL, map, DeadlineUtil.remainingMillis(HttpGlobalConfig.getTimeout()));
             log.info("SmsBroadcastImpl.sendMessage --> result: {}", result);
         }
     }
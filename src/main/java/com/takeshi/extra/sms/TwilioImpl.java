@@ -5,6 +5,7 @@ import cn.hutool.extra.spring.SpringUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.takeshi.config.properties.TwilioProperties;
 import com.takeshi.util.AwsSecretsManagerUtil;
+import com.takeshi.util.DeadlineUtil;
 import com.takeshi.util.GsonUtil;
 import com.twilio.Twilio;
 import com.twilio.rest.api.v2010.account.Message;
@@ -51,6 +52,8 @@ public class TwilioImpl implements SmsInterface {
     @Override
     public void sendMessage(boolean send, String phoneNumber, String message) {
         if (send) {
+            // Twilio客户端不支持单次调用的超时时间，请求已超时则不再发送
+            DeadlineUtil.check();
             Message msg = Message.creator(
                                          new PhoneNumber(phoneNumber),
                                          messagingServiceSid,
@@ -0,0 +1,41 @@
+package com.takeshi.mybatisplus;
+
+import com.takeshi.util.DeadlineUtil;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * 根据请求的截止时间设置JDBC的查询超时时间，请求超时后数据库查询会被中断
+ * <p>没有截止时间（没有header中的request-timeout和RequestPriority注解的timeoutMillis，或不在请求线程中）时保持原有的超时时间</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class DeadlineQueryTimeoutInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (result instanceof Statement statement) {
+            try {
+                int queryTimeout = statement.getQueryTimeout();
+                int remainingSeconds = DeadlineUtil.remainingSeconds(queryTimeout);
+                if (remainingSeconds != queryTimeout) {
+                    statement.setQueryTimeout(remainingSeconds);
+                }
+            } catch (Exception e) {
+                // 请求已超时，Executor拿不到Statement，在这里关闭
+                statement.close();
+                throw e;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.takeshi.mybatisplus;
+
+import com.takeshi.pojo.bo.SysLogRollupBO;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 系统日志按分钟预聚合的接口统计查询，只读取tb_sys_log_rollup表，不扫描tb_sys_log
+ * <p>时间范围为[startTime, endTime)，按分钟对齐，统计数据在每分钟结束后几十秒内写入</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public interface ISysLogRollupService {
+
+    /**
+     * 查询时间范围内每个接口的统计，按请求数从大到小排序
+     *
+     * @param startTime 开始时间
+     * @param endTime   结束时间
+     * @return 每个接口的统计
+     */
+    List<SysLogRollupBO> listEndpointStats(Instant startTime, Instant endTime);
+
+    /**
+     * 查询时间范围内一个接口的统计
+     *
+     * @param methodName 完整的方法名
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 接口的统计，没有请求时请求数为0
+     */
+    SysLogRollupBO getEndpointStats(String methodName, Instant startTime, Instant endTime);
+
+    /**
+     * 查询时间范围内一个接口每分钟的统计，按时间排序，没有请求的分钟不返回
+     *
+     * @param methodName 完整的方法名
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 每分钟的统计
+     */
+    List<SysLogRollupBO> listMinuteStats(String methodName, Instant startTime, Instant endTime);
+
+}
@@ -68,6 +68,17 @@ public class MybatisPlusConfig {
         return interceptor;
     }
 
+    /**
+     * 根据请求的截止时间设置JDBC的查询超时时间
+     *
+     * @return DeadlineQueryTimeoutInterceptor
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public DeadlineQueryTimeoutInterceptor deadlineQueryTimeoutInterceptor() {
+        return new DeadlineQueryTimeoutInterceptor();
+    }
+
     /**
      * mybatis Plus 配置定制器
      *
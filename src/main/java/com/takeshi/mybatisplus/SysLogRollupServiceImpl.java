@@ -0,0 +1,163 @@
+package com.takeshi.mybatisplus;
+
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.component.SysLogRollupComponent;
+import com.takeshi.pojo.bo.SysLogRollupBO;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+
+/**
+ * 系统日志按分钟预聚合的接口统计查询，同一分钟同一接口可能有多个应用实例写入的多行，查询时合并
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SysLogRollupServiceImpl implements ISysLogRollupService {
+
+    private static final String SELECT_SQL = "SELECT bucket_time, method_name, request_url, request_count, error_count, total_time_millis, max_time_millis, histogram "
+            + "FROM tb_sys_log_rollup WHERE bucket_time >= ? AND bucket_time < ?";
+
+    private final DataSource dataSource;
+
+    @Override
+    public List<SysLogRollupBO> listEndpointStats(Instant startTime, Instant endTime) {
+        Map<String, Aggregate> aggregateMap = new LinkedHashMap<>();
+        this.query(null, startTime, endTime, row -> aggregateMap.computeIfAbsent(row.methodName + "\n" + row.requestUrl, key -> new Aggregate(startTime, row.methodName, row.requestUrl)).add(row));
+        return aggregateMap.values().stream()
+                           .map(Aggregate::toBO)
+                           .sorted(Comparator.comparingLong(SysLogRollupBO::getRequestCount).reversed())
+                           .toList();
+    }
+
+    @Override
+    public SysLogRollupBO getEndpointStats(String methodName, Instant startTime, Instant endTime) {
+        Aggregate aggregate = new Aggregate(startTime, methodName, null);
+        this.query(methodName, startTime, endTime, aggregate::add);
+        return aggregate.toBO();
+    }
+
+    @Override
+    public List<SysLogRollupBO> listMinuteStats(String methodName, Instant startTime, Instant endTime) {
+        Map<Instant, Aggregate> aggregateMap = new TreeMap<>();
+        this.query(methodName, startTime, endTime, row -> aggregateMap.computeIfAbsent(row.bucketTime, key -> new Aggregate(key, methodName, row.requestUrl)).add(row));
+        return aggregateMap.values().stream().map(Aggregate::toBO).toList();
+    }
+
+    /**
+     * 查询时间范围内的分钟统计
+     *
+     * @param methodName 完整的方法名，为NULL时查询所有接口
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @param consumer   处理每一行
+     */
+    @SneakyThrows
+    private void query(String methodName, Instant startTime, Instant endTime, Consumer<Row> consumer) {
+        String sql = ObjUtil.isNull(methodName) ? SELECT_SQL : SELECT_SQL + " AND method_name = ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setTimestamp(1, Timestamp.from(startTime));
+            preparedStatement.setTimestamp(2, Timestamp.from(endTime));
+            if (ObjUtil.isNotNull(methodName)) {
+                preparedStatement.setString(3, methodName);
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(new Row(
+                            resultSet.getTimestamp("bucket_time").toInstant(),
+                            resultSet.getString("method_name"),
+                            resultSet.getString("request_url"),
+                            resultSet.getLong("request_count"),
+                            resultSet.getLong("error_count"),
+                            resultSet.getLong("total_time_millis"),
+                            resultSet.getLong("max_time_millis"),
+                            resultSet.getBytes("histogram")
+                    ));
+                }
+            }
+        }
+    }
+
+    /**
+     * tb_sys_log_rollup中的一行
+     */
+    private record Row(Instant bucketTime, String methodName, String requestUrl, long requestCount, long errorCount,
+                       long totalTimeMillis, long maxTimeMillis, byte[] histogram) {
+    }
+
+    /**
+     * 合并多行统计
+     */
+    private static final class Aggregate {
+
+        private final Instant startTime;
+
+        private final String methodName;
+
+        private final String requestUrl;
+
+        private final Histogram histogram = new Histogram(SysLogRollupComponent.SIGNIFICANT_DIGITS);
+
+        private long requestCount;
+
+        private long errorCount;
+
+        private long totalTimeMillis;
+
+        private long maxTimeMillis;
+
+        private Aggregate(Instant startTime, String methodName, String requestUrl) {
+            this.startTime = startTime;
+            this.methodName = methodName;
+            this.requestUrl = requestUrl;
+        }
+
+        private void add(Row row) {
+            this.requestCount += row.requestCount();
+            this.errorCount += row.errorCount();
+            this.totalTimeMillis += row.totalTimeMillis();
+            this.maxTimeMillis = Math.max(this.maxTimeMillis, row.maxTimeMillis());
+            if (ObjUtil.isNotNull(row.histogram())) {
+                try {
+                    this.histogram.add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(row.histogram()), 0));
+                } catch (DataFormatException e) {
+                    log.warn("SysLogRollupServiceImpl.add --> Invalid histogram of {} at {}", row.methodName(), row.bucketTime());
+                }
+            }
+        }
+
+        private SysLogRollupBO toBO() {
+            SysLogRollupBO sysLogRollupBO = new SysLogRollupBO();
+            sysLogRollupBO.setStartTime(this.startTime);
+            sysLogRollupBO.setMethodName(this.methodName);
+            sysLogRollupBO.setRequestUrl(this.requestUrl);
+            sysLogRollupBO.setRequestCount(this.requestCount);
+            sysLogRollupBO.setErrorCount(this.errorCount);
+            sysLogRollupBO.setErrorRate(this.requestCount == 0 ? 0 : (double) this.errorCount / this.requestCount);
+            sysLogRollupBO.setAvgTimeMillis(this.requestCount == 0 ? 0 : (double) this.totalTimeMillis / this.requestCount);
+            sysLogRollupBO.setMaxTimeMillis(this.maxTimeMillis);
+            sysLogRollupBO.setP50TimeMillis(this.histogram.getValueAtPercentile(50));
+            sysLogRollupBO.setP90TimeMillis(this.histogram.getValueAtPercentile(90));
+            sysLogRollupBO.setP99TimeMillis(this.histogram.getValueAtPercentile(99));
+            return sysLogRollupBO;
+        }
+
+    }
+
+}
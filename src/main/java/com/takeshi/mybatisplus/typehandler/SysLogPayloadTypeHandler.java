@@ -0,0 +1,51 @@
+package com.takeshi.mybatisplus.typehandler;
+
+import cn.hutool.extra.spring.SpringUtil;
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.util.SysLogPayloadUtil;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * <p>系统日志中请求头部、请求参数、响应数据的压缩存储，对应数据库中的VARBINARY、BLOB类型</p>
+ * <p>注意！！ 使用typeHandler，必须开启autoResultMap映射注解</p>
+ * <p>@TableName(autoResultMap = true)</p>
+ * <p>@TableField(typeHandler = SysLogPayloadTypeHandler.class)</p>
+ * <p>存入数据库时超过takeshi.sys-log.compress-threshold（默认1KB）的内容使用deflate压缩，从数据库中获取的时候自动解压，没有压缩的旧数据也可以正常读取，格式参考{@link SysLogPayloadUtil}</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public class SysLogPayloadTypeHandler extends BaseTypeHandler<String> {
+
+    private final SingletonSupplier<TakeshiProperties> takeshiPropertiesSupplier = SingletonSupplier.of(() -> SpringUtil.getBean(TakeshiProperties.class));
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType)
+            throws SQLException {
+        // 与SysLogWriter使用同一个压缩阈值
+        int compressThreshold = (int) takeshiPropertiesSupplier.obtain().getSysLog().getCompressThreshold().toBytes();
+        ps.setBytes(i, SysLogPayloadUtil.encode(parameter, compressThreshold));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return SysLogPayloadUtil.decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return SysLogPayloadUtil.decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return SysLogPayloadUtil.decode(cs.getBytes(columnIndex));
+    }
+
+}
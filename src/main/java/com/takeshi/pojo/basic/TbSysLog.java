@@ -10,7 +10,7 @@ import java.time.Instant;
 
 /**
  * <p>
- * 系统操作日志，此处使用TbSysLog命名类，对应tb_sys_log表，因为使用{@link cn.hutool.db.Entity#parseWithUnderlineCase}解析
+ * 系统操作日志，此处使用TbSysLog命名类，对应tb_sys_log表，由{@link com.takeshi.component.SysLogWriter}批量写入
  * </p>
  *
  * @author 七濑武【Nanase Takeshi】
@@ -72,19 +72,19 @@ public class TbSysLog implements Serializable {
     private String requestUrl;
 
     /**
-     * 请求头部
+     * 请求头部，超过takeshi.sys-log.max-request-header-size时截断，开启压缩时使用SysLogPayloadTypeHandler读取
      */
     @Schema(description = "请求头部")
     private String requestHeader;
 
     /**
-     * 请求的参数
+     * 请求的参数，超过takeshi.sys-log.max-request-params-size时截断，开启压缩时使用SysLogPayloadTypeHandler读取
      */
     @Schema(description = "请求的参数")
     private String requestParams;
 
     /**
-     * 响应数据
+     * 响应数据，超过takeshi.sys-log.max-response-data-size时截断，开启压缩时使用SysLogPayloadTypeHandler读取
      */
     @Schema(description = "响应数据")
     private String responseData;
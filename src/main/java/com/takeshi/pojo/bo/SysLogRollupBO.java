@@ -0,0 +1,86 @@
+package com.takeshi.pojo.bo;
+
+import com.takeshi.pojo.basic.AbstractBasicSerializable;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.Instant;
+
+/**
+ * 接口在一段时间内的统计，由tb_sys_log_rollup中的分钟统计合并而来
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+@Schema
+public class SysLogRollupBO extends AbstractBasicSerializable {
+
+    /**
+     * 统计开始的时间，按分钟查询时为这一分钟的开始时间
+     */
+    @Schema(description = "统计开始的时间")
+    private Instant startTime;
+
+    /**
+     * 请求的方法，带包名类名的完整的方法名
+     */
+    @Schema(description = "请求的方法，带包名类名的完整的方法名")
+    private String methodName;
+
+    /**
+     * 请求路径的模板
+     */
+    @Schema(description = "请求路径的模板")
+    private String requestUrl;
+
+    /**
+     * 请求数
+     */
+    @Schema(description = "请求数")
+    private long requestCount;
+
+    /**
+     * 失败数
+     */
+    @Schema(description = "失败数")
+    private long errorCount;
+
+    /**
+     * 失败率，0~1
+     */
+    @Schema(description = "失败率")
+    private double errorRate;
+
+    /**
+     * 平均耗时（单位：毫秒）
+     */
+    @Schema(description = "平均耗时（单位：毫秒）")
+    private double avgTimeMillis;
+
+    /**
+     * 最大耗时（单位：毫秒）
+     */
+    @Schema(description = "最大耗时（单位：毫秒）")
+    private long maxTimeMillis;
+
+    /**
+     * 耗时的中位数（单位：毫秒）
+     */
+    @Schema(description = "耗时的中位数（单位：毫秒）")
+    private long p50TimeMillis;
+
+    /**
+     * 90%的请求耗时不超过此值（单位：毫秒）
+     */
+    @Schema(description = "90%的请求耗时不超过此值（单位：毫秒）")
+    private long p90TimeMillis;
+
+    /**
+     * 99%的请求耗时不超过此值（单位：毫秒）
+     */
+    @Schema(description = "99%的请求耗时不超过此值（单位：毫秒）")
+    private long p99TimeMillis;
+
+}
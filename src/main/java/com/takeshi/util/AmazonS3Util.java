@@ -33,6 +33,7 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequ
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
 import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 
 import javax.imageio.ImageIO;
@@ -454,8 +455,8 @@ public final class AmazonS3Util {
                 }
             }
             long contentLength = bytes.length;
-            // TransferManager 异步处理所有传输,所以这个调用立即返回
-            return AmazonS3Util.getS3TransferManager().upload(
+            // TransferManager 异步处理所有传输,所以这个调用立即返回，最多等待到请求的截止时间
+            CompletableFuture<CompletedUpload> completionFuture = AmazonS3Util.getS3TransferManager().upload(
                                        UploadRequest.builder()
                                                     .requestBody(AsyncRequestBody.fromBytes(bytes))
                                                     .putObjectRequest(
@@ -470,8 +471,9 @@ public final class AmazonS3Util {
                                                     )
                                                     .build()
                                )
-                               .completionFuture()
-                               .thenApply(completedUpload -> {
+                               .completionFuture();
+            // 超时后取消上传本身，取消thenApply派生的future不会中止上传
+            return DeadlineUtil.join(completionFuture.thenApply(completedUpload -> {
                                               URL url = getUrl(fileObjKey);
                                               if (this.fileInfoUrl) {
                                                   // 此处编码格式传null，目的是为了避免对原始URL反编码，导致访问的URL不正确
@@ -490,8 +492,7 @@ public final class AmazonS3Util {
                                               }
                                               return url;
                                           }
-                               )
-                               .join();
+                               ), completionFuture);
 
         }
     }
@@ -803,17 +804,16 @@ public final class AmazonS3Util {
      * @return boolean
      */
     public static boolean doesObjectExist(String key) {
-        return AmazonS3Util.getS3AsyncClient().headObject(builder -> builder.bucket(AmazonS3Util.getBucketName()).key(key).build())
-                           .thenApply(HeadObjectResponse::sdkHttpResponse)
-                           .thenApply(SdkHttpResponse::isSuccessful)
-                           .exceptionally(throwable -> {
-                               if (throwable.getCause() instanceof NoSuchKeyException) {
-                                   return false;
-                               } else {
-                                   throw new RuntimeException(throwable);
-                               }
-                           })
-                           .join();
+        CompletableFuture<HeadObjectResponse> headObjectFuture = AmazonS3Util.getS3AsyncClient().headObject(builder -> builder.bucket(AmazonS3Util.getBucketName()).key(key).build());
+        return DeadlineUtil.join(headObjectFuture.thenApply(HeadObjectResponse::sdkHttpResponse)
+                                                 .thenApply(SdkHttpResponse::isSuccessful)
+                                                 .exceptionally(throwable -> {
+                                                     if (throwable.getCause() instanceof NoSuchKeyException) {
+                                                         return false;
+                                                     } else {
+                                                         throw new RuntimeException(throwable);
+                                                     }
+                                                 }), headObjectFuture);
     }
 
     /**
@@ -823,7 +823,7 @@ public final class AmazonS3Util {
      * @return S3Object
      */
     public static HeadObjectResponse getObject(String key) {
-        return AmazonS3Util.getS3AsyncClient().headObject(builder -> builder.bucket(AmazonS3Util.getBucketName()).key(key).build()).join();
+        return DeadlineUtil.join(AmazonS3Util.getS3AsyncClient().headObject(builder -> builder.bucket(AmazonS3Util.getBucketName()).key(key).build()));
     }
 
     private static final DateTimeFormatter PATH_DATE_PATTERN_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd/", Locale.getDefault()).withZone(ZoneId.systemDefault());
@@ -0,0 +1,134 @@
+package com.takeshi.util;
+
+import cn.hutool.core.util.ObjUtil;
+import com.takeshi.config.security.TakeshiRequestContext;
+import com.takeshi.constants.TakeshiCode;
+import com.takeshi.exception.TakeshiException;
+import org.redisson.api.RFuture;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * 请求截止时间工具类，截止时间来自header中的request-timeout或RequestPriority注解的timeoutMillis
+ * <p>只在处理请求的线程中生效，其他线程（例如异步任务）中没有截止时间，所有方法保持原有的行为</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class DeadlineUtil {
+
+    private DeadlineUtil() {
+    }
+
+    /**
+     * 获取当前请求剩余的处理时间
+     *
+     * @return 剩余时间，已超时时为0或负数，没有截止时间时返回NULL
+     */
+    public static Duration remaining() {
+        TakeshiRequestContext requestContext = TakeshiRequestContext.current();
+        return ObjUtil.isNull(requestContext) ? null : requestContext.getRemaining();
+    }
+
+    /**
+     * 当前请求已超时则抛出异常
+     */
+    public static void check() {
+        Duration remaining = remaining();
+        if (ObjUtil.isNotNull(remaining) && !remaining.isPositive()) {
+            throw new TakeshiException(TakeshiCode.REQUEST_TIMEOUT);
+        }
+    }
+
+    /**
+     * 获取剩余的毫秒数，用于HTTP等调用的超时时间，已超时则抛出异常
+     *
+     * @param defaultMillis 没有截止时间时使用的值
+     * @return 剩余时间和defaultMillis（大于0时）中较小的值，最小为1毫秒
+     */
+    public static int remainingMillis(int defaultMillis) {
+        Duration remaining = remaining();
+        if (ObjUtil.isNull(remaining)) {
+            return defaultMillis;
+        }
+        check();
+        int millis = (int) Math.max(Math.min(remaining.toMillis(), Integer.MAX_VALUE), 1);
+        return defaultMillis > 0 ? Math.min(millis, defaultMillis) : millis;
+    }
+
+    /**
+     * 获取剩余的秒数，用于JDBC的查询超时时间，已超时则抛出异常
+     *
+     * @param defaultSeconds 没有截止时间时使用的值
+     * @return 剩余时间（向上取整）和defaultSeconds（大于0时）中较小的值，最小为1秒
+     */
+    public static int remainingSeconds(int defaultSeconds) {
+        Duration remaining = remaining();
+        if (ObjUtil.isNull(remaining)) {
+            return defaultSeconds;
+        }
+        check();
+        int seconds = (int) Math.max(Math.min((remaining.toMillis() + 999) / 1000, Integer.MAX_VALUE), 1);
+        return defaultSeconds > 0 ? Math.min(seconds, defaultSeconds) : seconds;
+    }
+
+    /**
+     * 等待CompletableFuture完成，与{@link CompletableFuture#join()}相同，但最多只等待到请求的截止时间，超时后取消任务并抛出异常
+     *
+     * @param future future
+     * @param <T>    T
+     * @return 结果
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        return join(future, future);
+    }
+
+    /**
+     * 等待由source派生（thenApply、exceptionally等）的future完成，最多只等待到请求的截止时间，超时后取消source并抛出异常
+     * <p>取消派生的future不会影响source，只有取消source（例如SDK返回的future）才能真正中止任务</p>
+     *
+     * @param future 等待结果的future
+     * @param source 真正执行任务的future，超时后取消
+     * @param <T>    T
+     * @return 结果
+     */
+    public static <T> T join(CompletableFuture<T> future, Future<?> source) {
+        Duration remaining = remaining();
+        if (ObjUtil.isNull(remaining) || future.isDone()) {
+            return future.join();
+        }
+        check();
+        try {
+            return future.get(remaining.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            source.cancel(true);
+            future.cancel(true);
+            throw new TakeshiException(TakeshiCode.REQUEST_TIMEOUT);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 等待Redisson的异步命令完成，最多只等待到请求的截止时间，超时后取消命令并抛出异常
+     * <p>命令执行失败时抛出原始的异常（例如RedisException），与同步调用的行为一致</p>
+     *
+     * @param future Redisson的*Async方法返回的future
+     * @param <T>    T
+     * @return 结果
+     */
+    public static <T> T join(RFuture<T> future) {
+        try {
+            return join(future.toCompletableFuture());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -146,7 +146,7 @@ public final class FirebaseUtil {
                                           completableFuture.completeExceptionally(error.toException());
                                       }
                                   });
-            return completableFuture.join();
+            return DeadlineUtil.join(completableFuture);
         }
 
         /**
@@ -202,12 +202,13 @@ public final class FirebaseUtil {
                                       public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
                                           if (error != null) {
                                               log.error("runTransactionOfSelfChange Database.onComplete --> error: ", error.toException());
+                                              completableFuture.completeExceptionally(error.toException());
                                           } else {
                                               completableFuture.complete(currentData);
                                           }
                                       }
                                   });
-            return completableFuture.join();
+            return DeadlineUtil.join(completableFuture);
         }
 
         /**
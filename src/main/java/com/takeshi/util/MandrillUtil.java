@@ -420,6 +420,8 @@ public final class MandrillUtil {
                 this.message.setFromEmail(this.fromEmail);
                 this.message.setFromName(this.fromName);
             }
+            // Mandrill客户端不支持单次调用的超时时间，请求已超时则不再发送
+            DeadlineUtil.check();
             MandrillMessageStatus[] result = mandrillApi.messages().send(this.message, false);
             if (ArrayUtil.isEmpty(result)) {
                 throw new TakeshiException("MandrillUtil sendThrow result is empty");
@@ -0,0 +1,166 @@
+package com.takeshi.util;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 系统日志中请求头部、请求参数、响应数据的截断和压缩
+ * <p>压缩后的格式为：魔数（'T'、'Z'、0x01）+ deflate数据，没有压缩的内容直接保存为UTF-8字节，
+ * 读取时根据魔数判断是否需要解压，已经保存的未压缩数据（包括TEXT列中的数据）可以正常读取</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class SysLogPayloadUtil {
+
+    /**
+     * 压缩数据的魔数，第三个字节是控制字符0x01，文本内容不会以这三个字节开头
+     */
+    private static final byte[] MAGIC = {'T', 'Z', 0x01};
+
+    /**
+     * 解压后允许的最大字节数，防止异常数据解压后占用过多内存
+     */
+    private static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 截断后JSON中除了prefix以外的部分大约占用的字节数
+     */
+    private static final int TRUNCATED_OVERHEAD = 64;
+
+    private SysLogPayloadUtil() {
+    }
+
+    /**
+     * 按UTF-8字节数截断内容，截断后保存为{@link #truncated(String, long)}格式的JSON，
+     * 文档中的表结构使用json类型保存这些列，截断后仍然需要是合法的JSON
+     *
+     * @param value    内容
+     * @param maxBytes 最大字节数（截断后大约为此大小，转义可能使其稍大），小于等于0时不截断
+     * @return 截断后的内容
+     */
+    public static String truncate(String value, int maxBytes) {
+        // 每个字符最多3个UTF-8字节（代理对为2个字符4个字节）
+        if (value == null || maxBytes <= 0 || (long) value.length() * 3 <= maxBytes) {
+            return value;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return value;
+        }
+        int end = Math.max(maxBytes - TRUNCATED_OVERHEAD, 0);
+        // 不要截断在多字节字符的中间
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return truncated(new String(bytes, 0, end, StandardCharsets.UTF_8), bytes.length);
+    }
+
+    /**
+     * 只保留了前部分的内容，保存为合法的JSON：{"truncated":true,"totalBytes":N,"prefix":"..."}
+     *
+     * @param prefix     保留的前部分内容
+     * @param totalBytes 完整内容的字节数
+     * @return JSON
+     */
+    public static String truncated(String prefix, long totalBytes) {
+        StringWriter stringWriter = new StringWriter(prefix.length() + TRUNCATED_OVERHEAD);
+        try (JsonWriter jsonWriter = new JsonWriter(stringWriter)) {
+            jsonWriter.beginObject()
+                      .name("truncated").value(true)
+                      .name("totalBytes").value(totalBytes)
+                      .name("prefix").value(prefix)
+                      .endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * 编码为保存到数据库中的字节，UTF-8字节数达到threshold时使用deflate压缩
+     *
+     * @param value     内容
+     * @param threshold 压缩阈值（字节），小于等于0时不压缩
+     * @return 字节数组，value为NULL时返回NULL
+     */
+    public static byte[] encode(String value, int threshold) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (threshold <= 0 || bytes.length < threshold) {
+            return bytes;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + MAGIC.length);
+            out.writeBytes(MAGIC);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            // 压缩后没有变小则直接保存
+            return out.size() < bytes.length ? out.toByteArray() : bytes;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解码从数据库中读取的字节
+     *
+     * @param bytes 字节数组
+     * @return 内容，bytes为NULL时返回NULL
+     */
+    public static String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (!isCompressed(bytes)) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, MAGIC.length, bytes.length - MAGIC.length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated sys log payload");
+                }
+                if (out.size() + count > MAX_INFLATED_SIZE) {
+                    throw new IllegalArgumentException("Sys log payload exceeds " + MAX_INFLATED_SIZE + " bytes after decompression");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid sys log payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 是否是压缩后的数据
+     *
+     * @param bytes 字节数组
+     * @return boolean
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length >= MAGIC.length && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+}
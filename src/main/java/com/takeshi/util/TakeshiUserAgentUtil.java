@@ -0,0 +1,103 @@
+package com.takeshi.util;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.ObjUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.useragent.Platform;
+import cn.hutool.http.useragent.UserAgent;
+import cn.hutool.http.useragent.UserAgentUtil;
+import com.takeshi.constants.TakeshiConstants;
+import com.takeshi.enums.PlatformEnum;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * 带有LRU缓存的User-Agent解析，相同的User-Agent只使用正则解析一次
+ * <p>缓存的解析结果{@link UserAgentInfo}不可变，可以在多个线程之间共享</p>
+ * <p>指标：takeshi.user-agent.cache（result=hit或miss）、takeshi.user-agent.cache.size</p>
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+public final class TakeshiUserAgentUtil {
+
+    /**
+     * 最多缓存的User-Agent数量
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * 超过此长度的User-Agent不缓存，避免异常请求占满缓存
+     */
+    private static final int MAX_CACHEABLE_LENGTH = 512;
+
+    /**
+     * 没有User-Agent时的解析结果
+     */
+    private static final UserAgentInfo UNKNOWN = new UserAgentInfo(false, Platform.Unknown.getName(), null, null, false);
+
+    private static final LRUCache<String, UserAgentInfo> CACHE = CacheUtil.newLRUCache(CAPACITY);
+
+    static {
+        FunctionCounter.builder("takeshi.user-agent.cache", CACHE, LRUCache::getHitCount).tag("result", "hit").register(Metrics.globalRegistry);
+        FunctionCounter.builder("takeshi.user-agent.cache", CACHE, LRUCache::getMissCount).tag("result", "miss").register(Metrics.globalRegistry);
+        Gauge.builder("takeshi.user-agent.cache.size", CACHE, LRUCache::size).register(Metrics.globalRegistry);
+    }
+
+    private TakeshiUserAgentUtil() {
+    }
+
+    /**
+     * 解析User-Agent
+     *
+     * @param userAgent User-Agent请求头
+     * @return UserAgentInfo，User-Agent为空时返回platform为Unknown的结果
+     */
+    public static UserAgentInfo parse(String userAgent) {
+        if (StrUtil.isBlank(userAgent)) {
+            return UNKNOWN;
+        }
+        if (userAgent.length() > MAX_CACHEABLE_LENGTH) {
+            return UserAgentInfo.of(UserAgentUtil.parse(userAgent));
+        }
+        return CACHE.get(userAgent, false, () -> UserAgentInfo.of(UserAgentUtil.parse(userAgent)));
+    }
+
+    /**
+     * 解析后的User-Agent
+     *
+     * @param mobile        是否为移动平台
+     * @param platform      平台名称
+     * @param os            系统名称
+     * @param browser       浏览器名称
+     * @param androidTablet 是否为Android平板
+     */
+    public record UserAgentInfo(boolean mobile, String platform, String os, String browser, boolean androidTablet) {
+
+        private static UserAgentInfo of(UserAgent userAgent) {
+            if (ObjUtil.isNull(userAgent)) {
+                return UNKNOWN;
+            }
+            Platform platform = userAgent.getPlatform();
+            return new UserAgentInfo(
+                    userAgent.isMobile(),
+                    ObjUtil.isNull(platform) ? null : platform.getName(),
+                    ObjUtil.isNull(userAgent.getOs()) ? null : userAgent.getOs().getName(),
+                    ObjUtil.isNull(userAgent.getBrowser()) ? null : userAgent.getBrowser().getName(),
+                    ObjUtil.isNotNull(platform) && StrUtil.equals(platform.getName(), TakeshiConstants.ANDROID_TABLET.getName())
+            );
+        }
+
+        /**
+         * 获取平台枚举
+         *
+         * @return PlatformEnum，不是已知平台时返回NULL
+         */
+        public PlatformEnum platformEnum() {
+            return PlatformEnum.fromValue(platform);
+        }
+
+    }
+
+}
@@ -54,6 +54,7 @@ import org.apache.tika.Tika;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.util.function.SingletonSupplier;
 
 import java.io.File;
 import java.math.BigDecimal;
@@ -81,6 +82,11 @@ public final class TakeshiUtil {
 
     private static final String LOCAL_IP = "0:0:0:0:0:0:0:1";
 
+    /**
+     * 本机IP，遍历网卡的开销较大，只获取一次
+     */
+    private static final SingletonSupplier<String> LOCALHOST_STR_SUPPLIER = SingletonSupplier.of(TakeshiUtil::resolveLocalhostStr);
+
     /**
      * 构造函数
      */
@@ -117,11 +123,15 @@ public final class TakeshiUtil {
     }
 
     /**
-     * 获取本机IP
+     * 获取本机IP，首次获取后会被缓存
      *
      * @return 本机IP
      */
     public static String getLocalhostStr() {
+        return LOCALHOST_STR_SUPPLIER.obtain();
+    }
+
+    private static String resolveLocalhostStr() {
         try {
             return Collections.list(NetworkInterface.getNetworkInterfaces())
                               .stream()
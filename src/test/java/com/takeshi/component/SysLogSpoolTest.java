@@ -0,0 +1,134 @@
+package com.takeshi.component;
+
+import com.takeshi.pojo.basic.TbSysLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SysLogSpoolTest
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+class SysLogSpoolTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    private static final Path FIRST_SEGMENT = Path.of("00000000000000000000.spool");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverDiscardsTornRecord() throws Exception {
+        long size;
+        try (SysLogSpool spool = new SysLogSpool(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4L)) {
+            assertEquals(3, spool.append(List.of(sysLog("1"), sysLog("2"), sysLog("3"))));
+            size = spool.size();
+        }
+        // 模拟进程崩溃时写了一半的记录：头部完整，数据只写了一部分
+        try (FileChannel fileChannel = FileChannel.open(directory.resolve(FIRST_SEGMENT), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            fileChannel.read(header, 0);
+            header.flip();
+            fileChannel.write(header, size);
+            fileChannel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), size + 8);
+        }
+        try (SysLogSpool spool = new SysLogSpool(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4L)) {
+            assertEquals(size, spool.size());
+            assertEquals(List.of("1", "2", "3"), traceIds(spool.peek(10)));
+            // 丢弃的记录之后可以继续追加
+            assertEquals(1, spool.append(List.of(sysLog("4"))));
+            assertEquals(List.of("1", "2", "3", "4"), traceIds(spool.peek(10)));
+        }
+    }
+
+    @Test
+    void commitOnlyAdvancesPastCommittedRecords() throws Exception {
+        try (SysLogSpool spool = new SysLogSpool(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4L)) {
+            spool.append(List.of(sysLog("1"), sysLog("2"), sysLog("3")));
+            assertEquals(3, spool.peek(10).size());
+            spool.commit(2);
+        }
+        try (SysLogSpool spool = new SysLogSpool(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4L)) {
+            assertEquals(List.of("3"), traceIds(spool.peek(10)));
+            spool.commit();
+            assertTrue(spool.isEmpty());
+        }
+    }
+
+    @Test
+    void commitMovesPastEndOfSegmentWithoutRecords() throws Exception {
+        int segmentSize = 1024;
+        int firstSegmentCount = 0;
+        try (SysLogSpool spool = new SysLogSpool(directory, segmentSize, segmentSize * 4L)) {
+            // 写满第一个段文件，最后一条日志写入第二个段文件
+            while (spool.size() <= segmentSize) {
+                spool.append(List.of(sysLog(String.valueOf(firstSegmentCount++))));
+            }
+            firstSegmentCount--;
+        }
+        // 模拟切换到第二个段文件后，日志还没有写完整时进程崩溃
+        try (FileChannel fileChannel = FileChannel.open(directory.resolve("00000000000000000001.spool"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            fileChannel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0}), Integer.BYTES);
+        }
+        try (SysLogSpool spool = new SysLogSpool(directory, segmentSize, segmentSize * 4L)) {
+            assertEquals(firstSegmentCount, spool.peek(firstSegmentCount).size());
+            spool.commit();
+            assertFalse(spool.isEmpty());
+            // 只跳过了段文件结束标记
+            assertTrue(spool.peek(10).isEmpty());
+            spool.commit(0);
+            assertTrue(spool.isEmpty());
+            spool.append(List.of(sysLog("next")));
+            assertEquals(List.of("next"), traceIds(spool.peek(10)));
+        }
+    }
+
+    @Test
+    void commitMovesPastCorruptRecord() throws Exception {
+        try (SysLogSpool spool = new SysLogSpool(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4L)) {
+            spool.append(List.of(sysLog("1"), sysLog("2")));
+            // 损坏第一条记录的数据，CRC校验失败
+            try (FileChannel fileChannel = FileChannel.open(directory.resolve(FIRST_SEGMENT), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer payload = ByteBuffer.allocate(1);
+                fileChannel.read(payload, 9);
+                fileChannel.write(ByteBuffer.wrap(new byte[]{(byte) ~payload.get(0)}), 9);
+            }
+            assertTrue(spool.peek(10).isEmpty());
+            assertFalse(spool.isEmpty());
+            spool.commit(0);
+            assertTrue(spool.isEmpty());
+            spool.append(List.of(sysLog("3")));
+            assertEquals(List.of("3"), traceIds(spool.peek(10)));
+        }
+    }
+
+    static TbSysLog sysLog(String traceId) {
+        TbSysLog tbSysLog = new TbSysLog();
+        tbSysLog.setLogType("TEST");
+        tbSysLog.setLoginId(1L);
+        tbSysLog.setHttpMethod("GET");
+        tbSysLog.setMethodName("com.takeshi.Test.test");
+        tbSysLog.setRequestUrl("/test");
+        tbSysLog.setTraceId(traceId);
+        tbSysLog.setSuccessful(true);
+        tbSysLog.setRequestTime(Instant.now());
+        tbSysLog.setCostTimeMillis(1L);
+        tbSysLog.setCreateTime(Instant.now());
+        return tbSysLog;
+    }
+
+    private static List<String> traceIds(List<TbSysLog> list) {
+        return list.stream().map(TbSysLog::getTraceId).toList();
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.takeshi.component;
+
+import com.takeshi.config.properties.TakeshiProperties;
+import com.takeshi.pojo.basic.TbSysLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * SysLogWriterTest
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+class SysLogWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PreparedStatement preparedStatement;
+
+    private SysLogWriter sysLogWriter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        Connection connection = mock(Connection.class);
+        preparedStatement = mock(PreparedStatement.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        TakeshiProperties takeshiProperties = new TakeshiProperties();
+        TakeshiProperties.Spool spool = takeshiProperties.getSysLog().getSpool();
+        spool.setEnabled(true);
+        spool.setDirectory(directory.toString());
+        spool.setSegmentSize(DataSize.ofKilobytes(64));
+        spool.setMaxSize(DataSize.ofKilobytes(256));
+        sysLogWriter = new SysLogWriter(dataSource, takeshiProperties, meterRegistry);
+    }
+
+    @Test
+    void replaySkipsOnlyBadRows() throws SQLException {
+        SQLException dataTooLong = new SQLException("Data too long for column 'request_url'", "22001");
+        when(preparedStatement.executeUpdate())
+                .thenThrow(new SQLTransientConnectionException("Connection is not available", "08001"))
+                .thenThrow(dataTooLong)
+                .thenReturn(1)
+                .thenThrow(dataTooLong)
+                .thenReturn(1);
+        sysLogWriter.flush(batch("1", "2", "3"));
+        assertEquals(3, count("spooled"));
+
+        assertTrue(sysLogWriter.replay(100));
+        assertEquals(2, count("replayed"));
+        assertEquals(1, count("failed"));
+        // 整批写入一次，之后逐条写入
+        verify(preparedStatement, times(5)).executeUpdate();
+        // 磁盘缓冲已经为空，没有写回任何日志
+        assertFalse(sysLogWriter.replay(100));
+        verify(preparedStatement, times(5)).executeUpdate();
+    }
+
+    @Test
+    void replayKeepsRowsAfterDatabaseBecomesUnavailable() throws SQLException {
+        when(preparedStatement.executeUpdate())
+                .thenThrow(new SQLTransientConnectionException("Connection is not available", "08001"))
+                .thenThrow(new SQLException("Incorrect string value", "HY000"))
+                .thenReturn(1)
+                .thenThrow(new SQLException("Communications link failure", "08S01"))
+                .thenReturn(1);
+        sysLogWriter.flush(batch("1", "2", "3"));
+
+        assertFalse(sysLogWriter.replay(100));
+        assertEquals(1, count("replayed"));
+        assertEquals(0, count("failed"));
+        // 第一条已经写入，只重试剩下的两条
+        assertTrue(sysLogWriter.replay(100));
+        assertEquals(3, count("replayed"));
+    }
+
+    @Test
+    void flushWritesGoodRowsWhenBatchFails() throws SQLException {
+        when(preparedStatement.executeUpdate())
+                .thenThrow(new SQLException("Incorrect string value", "HY000"))
+                .thenReturn(1)
+                .thenThrow(new SQLException("Incorrect string value", "HY000"))
+                .thenReturn(1);
+        sysLogWriter.flush(batch("1", "2", "3"));
+        assertEquals(2, count("written"));
+        assertEquals(1, count("failed"));
+        assertEquals(0, count("spooled"));
+    }
+
+    @Test
+    void isTransient() {
+        assertTrue(SysLogWriter.isTransient(new SQLTransientConnectionException("Connection is not available", "08001")));
+        assertTrue(SysLogWriter.isTransient(new SQLTimeoutException("Statement cancelled due to timeout")));
+        assertTrue(SysLogWriter.isTransient(new SQLException("Communications link failure", "08S01")));
+        assertFalse(SysLogWriter.isTransient(new SQLException("Incorrect string value", "HY000")));
+        assertFalse(SysLogWriter.isTransient(new DataTruncation(1, true, false, 1000, 300)));
+        assertFalse(SysLogWriter.isTransient(new SQLException("Unknown error")));
+    }
+
+    private List<TbSysLog> batch(String... traceIds) {
+        List<TbSysLog> list = new ArrayList<>();
+        for (String traceId : traceIds) {
+            list.add(SysLogSpoolTest.sysLog(traceId));
+        }
+        return list;
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("takeshi.sys-log").tag("result", result).counter().count();
+    }
+
+}
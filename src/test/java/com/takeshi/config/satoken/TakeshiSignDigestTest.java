@@ -0,0 +1,120 @@
+package com.takeshi.config.satoken;
+
+import cn.dev33.satoken.secure.SaSecureUtil;
+import cn.dev33.satoken.sign.SaSignConfig;
+import cn.hutool.core.map.MapUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.takeshi.component.NonceComponent;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * TakeshiSignDigestTest
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+class TakeshiSignDigestTest {
+
+    private static final String SECRET_KEY = "秘钥-secret😀";
+
+    @Test
+    void signMatchesJoinedDigest() {
+        TakeshiSignDigest signDigest = new TakeshiSignDigest(SaSecureUtil::md5);
+        assertTrue(signDigest.isSupported());
+        Map<String, String> paramsMap = paramsMap();
+        assertEquals(legacySign(paramsMap, SaSecureUtil::md5), signDigest.sign(paramsMap, "sign", "key", SECRET_KEY));
+    }
+
+    @Test
+    void signMatchesJoinedDigestForLongValues() {
+        TakeshiSignDigest signDigest = new TakeshiSignDigest(SaSecureUtil::md5);
+        Map<String, String> paramsMap = paramsMap();
+        // 超过编码缓冲区大小，并且让4字节字符跨越缓冲区边界
+        paramsMap.put("long", "a" + "签😀".repeat(600));
+        paramsMap.put("surrogate", "x\uD800y\uDC00z");
+        assertEquals(legacySign(paramsMap, SaSecureUtil::md5), signDigest.sign(paramsMap, "sign", "key", SECRET_KEY));
+    }
+
+    @Test
+    void detectsSha256() {
+        TakeshiSignDigest signDigest = new TakeshiSignDigest(SaSecureUtil::sha256);
+        assertTrue(signDigest.isSupported());
+        Map<String, String> paramsMap = paramsMap();
+        assertEquals(legacySign(paramsMap, SaSecureUtil::sha256), signDigest.sign(paramsMap, "sign", "key", SECRET_KEY));
+    }
+
+    @Test
+    void unrecognizedDigestIsNotSupported() {
+        assertFalse(new TakeshiSignDigest(value -> SecureUtil.md5(value).toUpperCase()).isSupported());
+        assertFalse(new TakeshiSignDigest(value -> SecureUtil.hmacMd5("salt").digestHex(value)).isSupported());
+    }
+
+    @Test
+    void templateStreamsStringParams() {
+        TakeshiSaSignTemplate template = template(new TakeshiSaSignTemplate(new ObjectMapper(), mock(NonceComponent.class)));
+        Map<String, String> paramsMap = paramsMap();
+        assertEquals(legacySign(paramsMap, SaSecureUtil::md5), template.createSign(paramsMap));
+        assertTrue(paramsMap.containsKey("sign"));
+    }
+
+    @Test
+    void templateFallsBackForNonStringParams() {
+        TakeshiSaSignTemplate template = template(new TakeshiSaSignTemplate(new ObjectMapper(), mock(NonceComponent.class)));
+        Map<String, Object> paramsMap = new HashMap<>(paramsMap());
+        paramsMap.put("count", 12);
+        paramsMap.put("flag", true);
+        assertEquals(legacySign(paramsMap, SaSecureUtil::md5), template.createSign(paramsMap));
+    }
+
+    @Test
+    void templateFallsBackForUnrecognizedDigest() {
+        TakeshiSaSignTemplate template = template(new TakeshiSaSignTemplate(new ObjectMapper(), mock(NonceComponent.class)) {
+            @Override
+            public String digestFullStr(String fullStr) {
+                return SaSecureUtil.md5(fullStr).toUpperCase();
+            }
+        });
+        Map<String, String> paramsMap = paramsMap();
+        assertEquals(legacySign(paramsMap, value -> SaSecureUtil.md5(value).toUpperCase()), template.createSign(paramsMap));
+    }
+
+    private static Map<String, String> paramsMap() {
+        Map<String, String> paramsMap = new HashMap<>();
+        paramsMap.put("name", "七濑武");
+        paramsMap.put("emoji", "😀👍");
+        paramsMap.put("text", "a b&c=d/é");
+        paramsMap.put("empty", "");
+        paramsMap.put("nullValue", null);
+        paramsMap.put("timestamp", "1729238400000");
+        paramsMap.put("nonce", "f3c8a1e4b2d94c6e8a7b5d1c0e9f2a3b");
+        paramsMap.put("sign", "a1b2c3d4e5f60718293a4b5c6d7e8f90");
+        return paramsMap;
+    }
+
+    /**
+     * 原来的计算方式
+     */
+    private static String legacySign(Map<String, ?> paramsMap, UnaryOperator<String> digestFullStr) {
+        Map<String, Object> map = new TreeMap<>(paramsMap);
+        map.remove("sign");
+        return digestFullStr.apply(MapUtil.sortJoin(map, "&", "=", true) + "&key=" + SECRET_KEY);
+    }
+
+    private static TakeshiSaSignTemplate template(TakeshiSaSignTemplate template) {
+        SaSignConfig signConfig = new SaSignConfig();
+        signConfig.setSecretKey(SECRET_KEY);
+        template.setSignConfig(signConfig);
+        return template;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.takeshi.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SysLogPayloadUtilTest
+ *
+ * @author 七濑武【Nanase Takeshi】
+ */
+class SysLogPayloadUtilTest {
+
+    @Test
+    void truncateKeepsValidJson() {
+        String value = "{\"name\":\"" + "七濑武\"<&>".repeat(200) + "\"}";
+        int totalBytes = value.getBytes(StandardCharsets.UTF_8).length;
+        String truncated = SysLogPayloadUtil.truncate(value, 256);
+        JsonObject jsonObject = JsonParser.parseString(truncated).getAsJsonObject();
+        assertTrue(jsonObject.get("truncated").getAsBoolean());
+        assertEquals(totalBytes, jsonObject.get("totalBytes").getAsLong());
+        String prefix = jsonObject.get("prefix").getAsString();
+        assertTrue(value.startsWith(prefix));
+        assertTrue(prefix.getBytes(StandardCharsets.UTF_8).length <= 256);
+    }
+
+    @Test
+    void truncateKeepsShortValue() {
+        assertEquals("{\"a\":1}", SysLogPayloadUtil.truncate("{\"a\":1}", 256));
+        assertNull(SysLogPayloadUtil.truncate(null, 256));
+    }
+
+}